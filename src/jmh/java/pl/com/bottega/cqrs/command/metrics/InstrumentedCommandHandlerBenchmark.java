@@ -0,0 +1,56 @@
+package pl.com.bottega.cqrs.command.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.cqrs.command.handler.CommandHandler;
+
+/**
+ * Overhead of instrumentation over a handler doing nothing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentedCommandHandlerBenchmark {
+
+	private final CommandHandler<String, Integer> handler = new CommandHandler<String, Integer>() {
+		@Override
+		public Integer handle(String command) {
+			return command.length();
+		}
+	};
+
+	private final InstrumentedCommandHandler<String, Integer> instrumented = new InstrumentedCommandHandler<String, Integer>(
+			handler);
+
+	private final String command = "command";
+
+	@Benchmark
+	public Integer plain() {
+		return handler.handle(command);
+	}
+
+	@Benchmark
+	public Integer instrumented() {
+		return instrumented.handle(command);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Integer instrumentedContended() {
+		return instrumented.handle(command);
+	}
+}
@@ -0,0 +1,56 @@
+package pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBenchmark {
+
+	private final String text = UUID.randomUUID().toString();
+
+	@Benchmark
+	public Id generate() {
+		return Id.generate();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Id generateContended() {
+		return Id.generate();
+	}
+
+	/**
+	 * What generate used to cost
+	 */
+	@Benchmark
+	@Threads(4)
+	public UUID randomUuidContended() {
+		return UUID.randomUUID();
+	}
+
+	@Benchmark
+	public Id parse() {
+		return new Id(text);
+	}
+
+	@Benchmark
+	public String generateAndRender() {
+		return Id.generate().getId();
+	}
+}
@@ -0,0 +1,111 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookKeeperBenchmark {
+
+	private static final int BATCH = 256;
+
+	@Param({ "1", "10", "100" })
+	private int lines;
+
+	private final BookKeeper bookKeeper = new BookKeeper(new InvoiceFactory());
+
+	private TaxPolicy taxPolicy;
+
+	private InvoiceRequest request;
+
+	private List<InvoiceRequest> batch;
+
+	@Setup
+	public void setUp() {
+		Map<ProductType, RateTableTaxPolicy.Rate> rates = new EnumMap<ProductType, RateTableTaxPolicy.Rate>(
+				ProductType.class);
+		rates.put(ProductType.DRUG, new RateTableTaxPolicy.Rate(new BigDecimal("0.05"), "5% (D)"));
+		rates.put(ProductType.FOOD, new RateTableTaxPolicy.Rate(new BigDecimal("0.07"), "7% (F)"));
+		rates.put(ProductType.STANDARD, new RateTableTaxPolicy.Rate(new BigDecimal("0.23"), "23%"));
+		taxPolicy = new RateTableTaxPolicy(rates);
+
+		request = newRequest();
+		batch = new ArrayList<InvoiceRequest>(BATCH);
+		for (int i = 0; i < BATCH; i++)
+			batch.add(newRequest());
+	}
+
+	@Benchmark
+	public Invoice issuance() {
+		return bookKeeper.issuance(request, taxPolicy);
+	}
+
+	/**
+	 * Issues {@value #BATCH} invoices in a pool of the given parallelism, shows
+	 * how throughput scales with cores
+	 */
+	@Benchmark
+	public List<IssuanceResult> issueAll(IssuancePool issuancePool) {
+		return bookKeeper.issueAll(batch, taxPolicy, issuancePool.pool);
+	}
+
+	@State(Scope.Benchmark)
+	public static class IssuancePool {
+
+		@Param({ "1", "2", "4", "8" })
+		private int parallelism;
+
+		private ForkJoinPool pool;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			pool = new ForkJoinPool(parallelism);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			pool.shutdown();
+		}
+	}
+
+	private InvoiceRequest newRequest() {
+		InvoiceRequest invoiceRequest = new InvoiceRequest(new ClientData(Id.generate(), "client"));
+		ProductType[] types = ProductType.values();
+		for (int i = 0; i < lines; i++) {
+			ProductData product = new Product(Id.generate(), new Money(i + 0.99), "product " + i, types[i % types.length])
+					.generateSnapshot();
+			invoiceRequest.add(new RequestItem(product, 3, product.getPrice().multiplyBy(3)));
+		}
+		return invoiceRequest;
+	}
+}
@@ -0,0 +1,76 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OfferBenchmark {
+
+	@Param({ "1", "10", "100" })
+	private int items;
+
+	private Offer offer;
+
+	private Offer seenOffer;
+
+	private Offer changedOffer;
+
+	@Setup
+	public void setUp() {
+		List<ProductData> products = new ArrayList<ProductData>(items);
+		for (int i = 0; i < items; i++)
+			products.add(new Product(Id.generate(), new Money(i + 0.99), "product " + i, ProductType.STANDARD)
+					.generateSnapshot());
+
+		offer = offer(products, 0);
+		seenOffer = offer(products, 0);
+		changedOffer = offer(products, 1);
+	}
+
+	@Benchmark
+	public boolean sameAs() {
+		return offer.sameAs(seenOffer, 1);
+	}
+
+	/**
+	 * Offers differing in quantity of the last line
+	 */
+	@Benchmark
+	public boolean sameAsChanged() {
+		return offer.sameAs(changedOffer, 1);
+	}
+
+	private static Offer offer(List<ProductData> products, int extraQuantityOfLast) {
+		List<OfferItem> offerItems = new ArrayList<OfferItem>(products.size());
+		for (int i = 0; i < products.size(); i++) {
+			int quantity = i == products.size() - 1 ? 2 + extraQuantityOfLast : 2;
+			offerItems.add(new OfferItem(products.get(i), quantity));
+		}
+		return new Offer(offerItems, Collections.<OfferItem> emptyList());
+	}
+}
@@ -0,0 +1,165 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAmounts;
+
+/**
+ * {@link OfferCodec} compared with Java serialization of an equivalent
+ * Serializable DTO. Encoded sizes of both are printed at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OfferCodecBenchmark {
+
+	@Param({ "1", "10", "100" })
+	private int items;
+
+	private Offer offer;
+
+	private OfferDto offerDto;
+
+	private ByteBuffer buffer;
+
+	private byte[] encoded;
+
+	private byte[] serialized;
+
+	@Setup
+	public void setUp() throws IOException {
+		List<OfferItem> offerItems = new ArrayList<OfferItem>(items);
+		ProductType[] types = ProductType.values();
+		for (int i = 0; i < items; i++) {
+			ProductData product = new Product(Id.generate(), new Money(i + 0.99), "product " + i,
+					types[i % types.length]).generateSnapshot();
+			Discount discount = i % 2 == 0 ? new Discount("loyalty", new Money(0.5)) : null;
+			offerItems.add(new OfferItem(product, 2, discount));
+		}
+		offer = new Offer(offerItems, Collections.<OfferItem> emptyList());
+		offerDto = new OfferDto(offer);
+
+		buffer = ByteBuffer.allocate(1024 * 1024);
+		binaryEncode();
+		encoded = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(encoded);
+
+		serialized = serialize();
+
+		System.out.println("items: " + items + ", OfferCodec: " + encoded.length + " bytes, serialization: "
+				+ serialized.length + " bytes");
+	}
+
+	@Benchmark
+	public ByteBuffer binaryEncode() {
+		buffer.clear();
+		OfferCodec.encode(offer, buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public Offer binaryDecode() {
+		return OfferCodec.decode(ByteBuffer.wrap(encoded));
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(offerDto);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public Object deserialize() throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+		return in.readObject();
+	}
+
+	static class OfferDto implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final List<OfferItemDto> availableItems = new ArrayList<OfferItemDto>();
+
+		final List<OfferItemDto> unavailableItems = new ArrayList<OfferItemDto>();
+
+		OfferDto(Offer offer) {
+			for (OfferItem item : offer.getAvailabeItems())
+				availableItems.add(new OfferItemDto(item));
+			for (OfferItem item : offer.getUnavailableItems())
+				unavailableItems.add(new OfferItemDto(item));
+		}
+	}
+
+	static class OfferItemDto implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final String productId;
+
+		final BigDecimal price;
+
+		final String currencyCode;
+
+		final String name;
+
+		final ProductType type;
+
+		final Date snapshotDate;
+
+		final int quantity;
+
+		final String discountCause;
+
+		final BigDecimal discountValue;
+
+		OfferItemDto(OfferItem item) {
+			ProductData product = item.getProductData();
+			productId = product.getProductId().getId();
+			price = MoneyAmounts.of(product.getPrice());
+			currencyCode = product.getPrice().getCurrencyCode();
+			name = product.getName();
+			type = product.getType();
+			snapshotDate = product.getSnapshotDate();
+			quantity = item.getQuantity();
+			discountCause = item.getDiscount() == null ? null : item.getDiscount().getCause();
+			discountValue = item.getDiscount() == null ? null
+					: MoneyAmounts.of(item.getDiscount().getValue());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.ddd.support.domain.DomainResult;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation.ReservationStatus;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationException.DomainOperationException;
+
+/**
+ * Rejection heavy traffic: adding an archived product, which the reservation
+ * always rejects
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectionBenchmark {
+
+	private Reservation reservation;
+
+	private Product archived;
+
+	@Setup
+	public void setUp() {
+		reservation = new Reservation(Id.generate(), ReservationStatus.OPENED,
+				new ClientData(Id.generate(), "client"), new Date());
+		archived = new Product(Id.generate(), new Money(9.99), "archived", ProductType.STANDARD);
+		archived.markAsRemoved();
+	}
+
+	@Benchmark
+	public Object addThrowing() {
+		try {
+			reservation.add(archived, 1);
+			return null;
+		} catch (DomainOperationException e) {
+			return e;
+		}
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-D" + DomainOperationException.STACKLESS_PROPERTY + "=true")
+	public Object addThrowingStackless() {
+		try {
+			reservation.add(archived, 1);
+			return null;
+		} catch (DomainOperationException e) {
+			return e;
+		}
+	}
+
+	@Benchmark
+	public DomainResult<Void> tryAdd() {
+		return reservation.tryAdd(archived, 1);
+	}
+}
@@ -0,0 +1,113 @@
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.offer.Discount;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountPolicy;
+import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
+import pl.com.bottega.ecommerce.sales.domain.offer.PerItemDiscountPolicyAdapter;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation.ReservationStatus;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationBenchmark {
+
+	@Param({ "1", "10", "100", "1000" })
+	private int items;
+
+	private final ClientData client = new ClientData(Id.generate(), "client");
+
+	private Product[] products;
+
+	private Reservation reservation;
+
+	private DiscountPolicy policy;
+
+	@Setup
+	public void setUp() {
+		products = new Product[items];
+		for (int i = 0; i < items; i++)
+			products[i] = new Product(Id.generate(), new Money(i + 0.99), "product " + i, ProductType.STANDARD);
+
+		reservation = newReservation();
+		for (Product product : products)
+			reservation.add(product, 2);
+		reservation.markEventsCommitted();
+
+		policy = newPolicy();
+		reservation.calculateOffer(policy);
+	}
+
+	/**
+	 * Fills an empty reservation with all products
+	 */
+	@Benchmark
+	public Reservation add() {
+		Reservation filled = newReservation();
+		for (Product product : products)
+			filled.add(product, 1);
+		return filled;
+	}
+
+	/**
+	 * Adds product that is already reserved, the common case for repeated
+	 * commands. Events are committed as a repository would on save.
+	 */
+	@Benchmark
+	public Reservation addExisting() {
+		reservation.add(products[products.length - 1], 1);
+		reservation.add(products[products.length - 1], -1);
+		reservation.markEventsCommitted();
+		return reservation;
+	}
+
+	@Benchmark
+	public Offer calculateOfferUnchanged() {
+		return reservation.calculateOffer(policy);
+	}
+
+	@Benchmark
+	public Offer calculateOfferNewPolicy() {
+		return reservation.calculateOffer(newPolicy());
+	}
+
+	@Benchmark
+	public Offer calculateOfferBulk() {
+		return reservation.calculateOffer(new PerItemDiscountPolicyAdapter(policy));
+	}
+
+	private Reservation newReservation() {
+		return new Reservation(Id.generate(), ReservationStatus.OPENED, client, new Date());
+	}
+
+	private static DiscountPolicy newPolicy() {
+		return new DiscountPolicy() {
+			@Override
+			public Discount applyDiscount(Product product, int quantity, Money regularCost) {
+				return quantity > 1 ? new Discount("quantity", regularCost.multiplyBy(0.1)) : null;
+			}
+		};
+	}
+}
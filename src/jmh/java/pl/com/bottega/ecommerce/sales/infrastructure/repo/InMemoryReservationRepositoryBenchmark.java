@@ -0,0 +1,103 @@
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationEvent;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Load, add, save loops retrying on {@link OptimisticLockException}. Scores
+ * are totals over all threads, so ownReservation divided by singleThread is
+ * the speedup from saving different reservations in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryReservationRepositoryBenchmark {
+
+	private final InMemoryReservationRepository repository = new InMemoryReservationRepository();
+
+	private final Product product = new Product(Id.generate(), new Money(1), "product", ProductType.STANDARD);
+
+	private Id sharedReservationId;
+
+	@Setup
+	public void setUp() {
+		sharedReservationId = newReservation();
+	}
+
+	@State(Scope.Thread)
+	public static class OwnReservation {
+
+		private Id reservationId;
+
+		@Setup
+		public void setUp(InMemoryReservationRepositoryBenchmark benchmark) {
+			reservationId = benchmark.newReservation();
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Reservation singleThread(OwnReservation own) {
+		return addOne(own.reservationId);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Reservation ownReservation(OwnReservation own) {
+		return addOne(own.reservationId);
+	}
+
+	/**
+	 * All threads save the same reservation, most saves are retried
+	 */
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Reservation sharedReservation() {
+		return addOne(sharedReservationId);
+	}
+
+	private Reservation addOne(Id reservationId) {
+		while (true) {
+			Reservation reservation = repository.load(reservationId);
+			reservation.add(product, 1);
+			try {
+				repository.save(reservation);
+				return reservation;
+			} catch (OptimisticLockException e) {
+				// based on a stale version, load again
+			}
+		}
+	}
+
+	private Id newReservation() {
+		Reservation reservation = Reservation.restore(Id.generate(), new ClientData(Id.generate(), "client"),
+				new Date(), Collections.<ReservationEvent> emptyList(), Collections.<Id, Product> emptyMap());
+		repository.save(reservation);
+		return reservation.getId();
+	}
+}
@@ -0,0 +1,16 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+
+/**
+ * Exposes Money amounts to benchmarks in other packages
+ */
+public final class MoneyAmounts {
+
+	private MoneyAmounts() {
+	}
+
+	public static BigDecimal of(Money money) {
+		return money.denomination();
+	}
+}
@@ -0,0 +1,90 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+	private static final int PRICES = 100;
+
+	private Money price;
+
+	private Money discount;
+
+	private Money inflated;
+
+	private Money[] prices;
+
+	@Setup
+	public void setUp() {
+		price = new Money(12.34);
+		discount = new Money(5.67);
+		inflated = new Money(new BigDecimal("123456789012345678901.23"));
+		prices = new Money[PRICES];
+		for (int i = 0; i < PRICES; i++)
+			prices[i] = new Money(i + 0.99);
+	}
+
+	@Benchmark
+	public Money add() {
+		return price.add(discount);
+	}
+
+	@Benchmark
+	public Money addInflated() {
+		return inflated.add(price);
+	}
+
+	@Benchmark
+	public Money subtract() {
+		return price.subtract(discount);
+	}
+
+	@Benchmark
+	public Money multiplyByQuantity() {
+		return price.multiplyBy(7);
+	}
+
+	@Benchmark
+	public Money multiplyByRate() {
+		return price.multiplyBy(0.23);
+	}
+
+	@Benchmark
+	public boolean greaterThan() {
+		return price.greaterThan(discount);
+	}
+
+	@Benchmark
+	public Money sumChained() {
+		Money sum = Money.ZERO;
+		for (Money each : prices)
+			sum = sum.add(each);
+		return sum;
+	}
+
+	@Benchmark
+	public Money sumAccumulated() {
+		MoneyAccumulator sum = new MoneyAccumulator();
+		for (Money each : prices)
+			sum.add(each);
+		return sum.total();
+	}
+}
@@ -0,0 +1,232 @@
+package pl.com.bottega.cqrs.command.dispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import pl.com.bottega.cqrs.command.handler.BatchCommandHandler;
+import pl.com.bottega.cqrs.command.handler.CommandHandler;
+import pl.com.bottega.cqrs.command.handler.CommandOutcome;
+
+/**
+ * Collects commands targeting the same aggregate for a short window and hands
+ * them to the handler as one batch.<br>
+ * Batches of the same aggregate never run concurrently - commands arriving
+ * while a batch is handled are collected into the next one. Every command
+ * keeps its own result or failure.
+ */
+public class CoalescingCommandDispatcher<C, R> implements CommandHandler<C, R> {
+
+	private final BatchCommandHandler<C, R> handler;
+
+	private final Function<? super C, ?> aggregateKey;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final long windowMillis;
+
+	private final ConcurrentMap<Object, Batch> batches = new ConcurrentHashMap<Object, Batch>();
+
+	/**
+	 * 
+	 * @param handler
+	 * @param aggregateKey
+	 *            extracts key of the aggregate targeted by a command, ex:
+	 *            order id
+	 * @param scheduler
+	 *            runs batches once their window elapses
+	 * @param windowMillis
+	 *            how long commands are collected before a batch is handled
+	 */
+	public CoalescingCommandDispatcher(BatchCommandHandler<C, R> handler, Function<? super C, ?> aggregateKey,
+			ScheduledExecutorService scheduler, long windowMillis) {
+		this.handler = handler;
+		this.aggregateKey = aggregateKey;
+		this.scheduler = scheduler;
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * 
+	 * @return future completed with the outcome of the command; failed
+	 *         with the scheduler's exception if its batch cannot be scheduled
+	 */
+	public CompletableFuture<R> dispatch(C command) {
+		Object key = aggregateKey.apply(command);
+		Enqueue enqueue = new Enqueue(command);
+		batches.compute(key, enqueue);
+
+		if (enqueue.created)
+			scheduleFlush(key);
+		return enqueue.result;
+	}
+
+	/**
+	 * Dispatches command and waits until its batch has been handled.
+	 */
+	@Override
+	public R handle(C command) {
+		try {
+			return dispatch(command).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Batch of key is abandoned and its commands fail if the scheduler
+	 * rejects the flush, so that later commands start a new batch.
+	 */
+	private void scheduleFlush(final Object key) {
+		try {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush(key);
+				}
+			}, windowMillis, TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			Batch batch = batches.remove(key);
+			if (batch != null)
+				fail(batch.results, e);
+		}
+	}
+
+	private void flush(Object key) {
+		Drain drain = new Drain();
+		batches.computeIfPresent(key, drain);
+		if (drain.commands == null)
+			return;
+
+		try {
+			complete(drain.commands, drain.results);
+		} finally {
+			Release release = new Release();
+			batches.computeIfPresent(key, release);
+			if (release.more)
+				scheduleFlush(key);
+		}
+	}
+
+	/**
+	 * Every future is completed on return, also when the handler fails or
+	 * returns fewer outcomes than commands.
+	 */
+	private void complete(List<C> commands, List<CompletableFuture<R>> results) {
+		Throwable failure = null;
+		try {
+			List<CommandOutcome<R>> outcomes = handler.handleBatch(commands);
+			int handled = Math.min(outcomes.size(), results.size());
+			for (int i = 0; i < handled; i++) {
+				CommandOutcome<R> outcome = outcomes.get(i);
+				if (outcome.isSuccess())
+					results.get(i).complete(outcome.getResult());
+				else
+					results.get(i).completeExceptionally(outcome.getFailure());
+			}
+			if (outcomes.size() != results.size())
+				failure = new IllegalStateException("Handler returned " + outcomes.size() + " outcomes for "
+						+ results.size() + " commands");
+		} catch (RuntimeException e) {
+			failure = e;
+		} catch (Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			fail(results, failure);
+		}
+	}
+
+	/**
+	 * Completes futures left undone, with failure or, if null, with an
+	 * exception created only when such a future exists.
+	 */
+	private void fail(List<CompletableFuture<R>> results, Throwable failure) {
+		for (CompletableFuture<R> result : results) {
+			if (!result.isDone()) {
+				if (failure == null)
+					failure = new IllegalStateException("Command not handled");
+				result.completeExceptionally(failure);
+			}
+		}
+	}
+
+	private class Batch {
+
+		private List<C> commands = new ArrayList<C>();
+
+		private List<CompletableFuture<R>> results = new ArrayList<CompletableFuture<R>>();
+	}
+
+	/**
+	 * Adds a command to the batch of its key, creating the batch if needed.
+	 */
+	private class Enqueue implements BiFunction<Object, Batch, Batch> {
+
+		private final C command;
+
+		private final CompletableFuture<R> result = new CompletableFuture<R>();
+
+		private boolean created;
+
+		Enqueue(C command) {
+			this.command = command;
+		}
+
+		@Override
+		public Batch apply(Object key, Batch batch) {
+			if (batch == null) {
+				batch = new Batch();
+				created = true;
+			}
+			batch.commands.add(command);
+			batch.results.add(result);
+			return batch;
+		}
+	}
+
+	/**
+	 * Takes the commands collected so far, the batch stays in place so that
+	 * commands arriving meanwhile wait for the next flush.
+	 */
+	private class Drain implements BiFunction<Object, Batch, Batch> {
+
+		private List<C> commands;
+
+		private List<CompletableFuture<R>> results;
+
+		@Override
+		public Batch apply(Object key, Batch batch) {
+			commands = batch.commands;
+			results = batch.results;
+			batch.commands = new ArrayList<C>();
+			batch.results = new ArrayList<CompletableFuture<R>>();
+			return batch;
+		}
+	}
+
+	/**
+	 * Removes the batch unless commands arrived while it was handled.
+	 */
+	private class Release implements BiFunction<Object, Batch, Batch> {
+
+		private boolean more;
+
+		@Override
+		public Batch apply(Object key, Batch batch) {
+			more = !batch.commands.isEmpty();
+			return more ? batch : null;
+		}
+	}
+}
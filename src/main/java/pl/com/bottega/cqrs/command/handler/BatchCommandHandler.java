@@ -0,0 +1,17 @@
+package pl.com.bottega.cqrs.command.handler;
+
+import java.util.List;
+
+/**
+ * Handler able to process several commands targeting the same aggregate as
+ * one unit of work.
+ */
+public interface BatchCommandHandler<C, R> extends CommandHandler<C, R> {
+	/**
+	 * 
+	 * @param commands
+	 *            commands targeting the same aggregate, in arrival order
+	 * @return outcome of each command, in the order of commands
+	 */
+	public List<CommandOutcome<R>> handleBatch(List<C> commands);
+}
@@ -0,0 +1,36 @@
+package pl.com.bottega.cqrs.command.handler;
+
+/**
+ * Result or failure of a single command handled within a batch.
+ */
+public class CommandOutcome<R> {
+
+	private final R result;
+
+	private final RuntimeException failure;
+
+	private CommandOutcome(R result, RuntimeException failure) {
+		this.result = result;
+		this.failure = failure;
+	}
+
+	public static <R> CommandOutcome<R> success(R result) {
+		return new CommandOutcome<R>(result, null);
+	}
+
+	public static <R> CommandOutcome<R> failure(RuntimeException failure) {
+		return new CommandOutcome<R>(null, failure);
+	}
+
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	public R getResult() {
+		return result;
+	}
+
+	public RuntimeException getFailure() {
+		return failure;
+	}
+}
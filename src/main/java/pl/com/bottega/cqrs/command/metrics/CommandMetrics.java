@@ -0,0 +1,94 @@
+package pl.com.bottega.cqrs.command.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Metrics of one command type at the moment they were taken. Latencies are in
+ * nanoseconds.
+ */
+public class CommandMetrics {
+
+	private final Class<?> commandType;
+
+	private final LatencyHistogram.Snapshot latency;
+
+	private final long failures;
+
+	private final Map<String, Long> failuresByCategory;
+
+	private final long elapsedNanos;
+
+	CommandMetrics(Class<?> commandType, LatencyHistogram.Snapshot latency, long failures,
+			Map<String, Long> failuresByCategory, long elapsedNanos) {
+		this.commandType = commandType;
+		this.latency = latency;
+		this.failures = failures;
+		this.failuresByCategory = Collections.unmodifiableMap(failuresByCategory);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public Class<?> getCommandType() {
+		return commandType;
+	}
+
+	/**
+	 * 
+	 * @return number of handled commands, failed ones included
+	 */
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * 
+	 * @return failures by category: part of the DomainOperationException
+	 *         message before ':' or simple name of other exceptions
+	 */
+	public Map<String, Long> getFailuresByCategory() {
+		return failuresByCategory;
+	}
+
+	/**
+	 * 
+	 * @return commands per second since the handler was created
+	 */
+	public double getThroughput() {
+		return elapsedNanos <= 0 ? 0 : getCount() * 1e9 / elapsedNanos;
+	}
+
+	public long getP50() {
+		return latency.getValueAtPercentile(50);
+	}
+
+	public long getP99() {
+		return latency.getValueAtPercentile(99);
+	}
+
+	public long getP999() {
+		return latency.getValueAtPercentile(99.9);
+	}
+
+	public long getMax() {
+		return latency.getMax();
+	}
+
+	public double getMean() {
+		return latency.getMean();
+	}
+
+	public LatencyHistogram.Snapshot getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return commandType.getSimpleName() + " count=" + getCount() + " failures=" + failures + " p50=" + getP50()
+				+ "ns p99=" + getP99() + "ns p99.9=" + getP999() + "ns max=" + getMax() + "ns throughput="
+				+ Math.round(getThroughput()) + "/s " + failuresByCategory;
+	}
+}
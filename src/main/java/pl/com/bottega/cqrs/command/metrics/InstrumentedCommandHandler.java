@@ -0,0 +1,188 @@
+package pl.com.bottega.cqrs.command.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import pl.com.bottega.cqrs.command.handler.BatchCommandHandler;
+import pl.com.bottega.cqrs.command.handler.CommandHandler;
+import pl.com.bottega.cqrs.command.handler.CommandOutcome;
+import pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationException.DomainOperationException;
+
+/**
+ * Records latency, throughput and failures of the decorated handler per
+ * command type. Recording is lock free and costs two clock reads and a few
+ * atomic increments per command.<br>
+ * Commands of a batch are all recorded with the latency of the whole batch,
+ * since that is how long each of them waited. A handler that cannot handle
+ * batches gets commands of a batch one by one.
+ */
+public class InstrumentedCommandHandler<C, R> implements BatchCommandHandler<C, R> {
+
+	/**
+	 * Bounds the number of categories, ex: when messages carry no ':'
+	 */
+	private static final int MAX_CATEGORIES = 64;
+
+	static final String OTHER_CATEGORY = "other";
+
+	private final CommandHandler<C, R> handler;
+
+	private final ConcurrentMap<Class<?>, CommandStats> stats = new ConcurrentHashMap<Class<?>, CommandStats>();
+
+	private final long startNanos = System.nanoTime();
+
+	public InstrumentedCommandHandler(CommandHandler<C, R> handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public R handle(C command) {
+		CommandStats commandStats = statsOf(command);
+		long start = System.nanoTime();
+		try {
+			R result = handler.handle(command);
+			commandStats.latency.record(System.nanoTime() - start);
+			return result;
+		} catch (RuntimeException e) {
+			commandStats.latency.record(System.nanoTime() - start);
+			commandStats.failed(e);
+			throw e;
+		}
+	}
+
+	@Override
+	public List<CommandOutcome<R>> handleBatch(List<C> commands) {
+		long start = System.nanoTime();
+		List<CommandOutcome<R>> outcomes;
+		try {
+			outcomes = handleBatchWithDelegate(commands);
+		} catch (RuntimeException e) {
+			long latency = System.nanoTime() - start;
+			for (C command : commands) {
+				CommandStats commandStats = statsOf(command);
+				commandStats.latency.record(latency);
+				commandStats.failed(e);
+			}
+			throw e;
+		}
+
+		long latency = System.nanoTime() - start;
+		RuntimeException notHandled = null;
+		for (int i = 0; i < commands.size(); i++) {
+			CommandStats commandStats = statsOf(commands.get(i));
+			commandStats.latency.record(latency);
+			if (i >= outcomes.size()) {
+				// left to the caller to fail, recorded as failed here
+				if (notHandled == null)
+					notHandled = new IllegalStateException("Command not handled");
+				commandStats.failed(notHandled);
+			} else if (!outcomes.get(i).isSuccess()) {
+				commandStats.failed(outcomes.get(i).getFailure());
+			}
+		}
+		return outcomes;
+	}
+
+	/**
+	 * 
+	 * @return metrics of every command type handled so far
+	 */
+	public Map<Class<?>, CommandMetrics> snapshot() {
+		Map<Class<?>, CommandMetrics> result = new HashMap<Class<?>, CommandMetrics>();
+		long elapsed = System.nanoTime() - startNanos;
+		for (CommandStats commandStats : stats.values())
+			result.put(commandStats.commandType, commandStats.snapshot(elapsed));
+		return result;
+	}
+
+	/**
+	 * 
+	 * @return null if no command of given type was handled
+	 */
+	public CommandMetrics snapshot(Class<?> commandType) {
+		CommandStats commandStats = stats.get(commandType);
+		return commandStats == null ? null : commandStats.snapshot(System.nanoTime() - startNanos);
+	}
+
+	static String categoryOf(RuntimeException failure) {
+		if (!(failure instanceof DomainOperationException))
+			return failure.getClass().getSimpleName();
+
+		String message = failure.getMessage();
+		if (message == null)
+			return OTHER_CATEGORY;
+		int colon = message.indexOf(':');
+		return (colon < 0 ? message : message.substring(0, colon)).trim();
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<CommandOutcome<R>> handleBatchWithDelegate(List<C> commands) {
+		if (handler instanceof BatchCommandHandler)
+			return ((BatchCommandHandler<C, R>) handler).handleBatch(commands);
+
+		List<CommandOutcome<R>> outcomes = new ArrayList<CommandOutcome<R>>(commands.size());
+		for (C command : commands) {
+			try {
+				outcomes.add(CommandOutcome.success(handler.handle(command)));
+			} catch (RuntimeException e) {
+				outcomes.add(CommandOutcome.<R> failure(e));
+			}
+		}
+		return outcomes;
+	}
+
+	private CommandStats statsOf(C command) {
+		Class<?> commandType = command.getClass();
+		CommandStats commandStats = stats.get(commandType);
+		if (commandStats == null) {
+			commandStats = new CommandStats(commandType);
+			CommandStats raced = stats.putIfAbsent(commandType, commandStats);
+			if (raced != null)
+				commandStats = raced;
+		}
+		return commandStats;
+	}
+
+	private static class CommandStats {
+
+		private final Class<?> commandType;
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private final LongAdder failures = new LongAdder();
+
+		private final ConcurrentMap<String, LongAdder> failuresByCategory = new ConcurrentHashMap<String, LongAdder>();
+
+		CommandStats(Class<?> commandType) {
+			this.commandType = commandType;
+		}
+
+		void failed(RuntimeException failure) {
+			failures.increment();
+
+			String category = categoryOf(failure);
+			LongAdder counter = failuresByCategory.get(category);
+			if (counter == null) {
+				if (failuresByCategory.size() >= MAX_CATEGORIES)
+					category = OTHER_CATEGORY;
+				counter = new LongAdder();
+				LongAdder raced = failuresByCategory.putIfAbsent(category, counter);
+				if (raced != null)
+					counter = raced;
+			}
+			counter.increment();
+		}
+
+		CommandMetrics snapshot(long elapsedNanos) {
+			Map<String, Long> categories = new HashMap<String, Long>();
+			for (Map.Entry<String, LongAdder> entry : failuresByCategory.entrySet())
+				categories.put(entry.getKey(), entry.getValue().sum());
+			return new CommandMetrics(commandType, latency.snapshot(), failures.sum(), categories, elapsedNanos);
+		}
+	}
+}
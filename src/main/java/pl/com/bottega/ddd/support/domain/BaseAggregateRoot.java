@@ -11,6 +11,12 @@ public class BaseAggregateRoot {
 	protected Id id;
 	private AggregateStatus aggregateStatus = AggregateStatus.ACTIVE;
 
+	/**
+	 * Version of the stored state this instance is based on, 0 if it was never
+	 * stored.
+	 */
+	private long version;
+
 	public void markAsRemoved() {
 		aggregateStatus = AggregateStatus.ARCHIVE;
 	}
@@ -19,6 +25,18 @@ public class BaseAggregateRoot {
 		return id;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Meant for repositories - records that state of this instance has been
+	 * stored as given version.
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	public boolean isRemoved() {
 		return aggregateStatus == AggregateStatus.ARCHIVE;
 	}
@@ -26,4 +44,8 @@ public class BaseAggregateRoot {
 	protected void domainError(String message) {
 		throw new DomainOperationException(id, message);
 	}
+
+	protected <T> DomainResult<T> domainRejection(String message) {
+		return DomainResult.rejected(id, message);
+	}
 }
@@ -0,0 +1,72 @@
+package pl.com.bottega.ddd.support.domain;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationException.DomainOperationException;
+
+/**
+ * Value of an operation or the reason the domain rejected it, for callers that
+ * branch on rejections instead of catching {@link DomainOperationException}.
+ */
+public class DomainResult<T> {
+
+	private static final DomainResult<Void> DONE = new DomainResult<Void>(null, null, null);
+
+	private final T value;
+
+	private final Id aggregateId;
+
+	private final String rejection;
+
+	private DomainResult(T value, Id aggregateId, String rejection) {
+		this.value = value;
+		this.aggregateId = aggregateId;
+		this.rejection = rejection;
+	}
+
+	public static <T> DomainResult<T> success(T value) {
+		return new DomainResult<T>(value, null, null);
+	}
+
+	/**
+	 * Successful result of an operation that has no value
+	 */
+	public static DomainResult<Void> done() {
+		return DONE;
+	}
+
+	public static <T> DomainResult<T> rejected(Id aggregateId, String rejection) {
+		return new DomainResult<T>(null, aggregateId, rejection);
+	}
+
+	public boolean isSuccess() {
+		return rejection == null;
+	}
+
+	public boolean isRejected() {
+		return rejection != null;
+	}
+
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * 
+	 * @return null if operation succeeded
+	 */
+	public String getRejection() {
+		return rejection;
+	}
+
+	/**
+	 * 
+	 * @return value of successful operation
+	 * @throws DomainOperationException
+	 *             if operation was rejected
+	 */
+	public T orThrow() {
+		if (rejection != null)
+			throw new DomainOperationException(aggregateId, rejection);
+		return value;
+	}
+}
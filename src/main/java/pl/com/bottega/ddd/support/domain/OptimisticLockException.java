@@ -0,0 +1,24 @@
+package pl.com.bottega.ddd.support.domain;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Thrown on attempt to save an aggregate based on a version that is no longer
+ * the current one.
+ */
+public class OptimisticLockException extends RuntimeException {
+
+	private static final long serialVersionUID = 4206328514815917283L;
+
+	private Id aggregateId;
+
+	public OptimisticLockException(Id aggregateId, long version, long currentVersion) {
+		super("Aggregate " + aggregateId + " was modified, saved version " + version + ", current version "
+				+ currentVersion);
+		this.aggregateId = aggregateId;
+	}
+
+	public Id getAggregateId() {
+		return aggregateId;
+	}
+}
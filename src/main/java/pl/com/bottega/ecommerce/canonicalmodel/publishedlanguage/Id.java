@@ -15,7 +15,11 @@
  */
 package pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.security.SecureRandom;
 import java.util.UUID;
 
 import org.apache.commons.lang3.Validate;
@@ -23,26 +27,87 @@ import org.apache.commons.lang3.Validate;
 
 public class Id implements Serializable{
 
+	/**
+	 * Serialized form is the text id only, as before the 128 bit form was
+	 * added.
+	 */
+	private static final long serialVersionUID = -3939527439195960194L;
+
 	private String id;
 
+	/**
+	 * 128 bit form of ids that are UUIDs, valid when hasBits is set. Text form
+	 * of such an id is rendered only when asked for.
+	 */
+	private transient long mostSignificantBits;
+
+	private transient long leastSignificantBits;
+
+	private transient boolean hasBits;
+
+	/**
+	 * Whether id text was already checked for the UUID form
+	 */
+	private transient boolean parsed;
+
 	public Id(String id) {
 		Validate.notNull(id);
 		this.id = id;
+		parse();
+	}
+
+	private Id(long mostSignificantBits, long leastSignificantBits) {
+		this.mostSignificantBits = mostSignificantBits;
+		this.leastSignificantBits = leastSignificantBits;
+		this.hasBits = true;
+		this.parsed = true;
 	}
 
 	protected Id() {
 	}
 	
+	/**
+	 * Generates a time ordered UUID (version 7 layout) from per-thread state,
+	 * without touching a shared random generator.
+	 */
 	public static Id generate(){
-		return new Id(UUID.randomUUID().toString());
+		return TimeOrderedGenerator.GENERATOR.get().next();
+	}
+
+	public static Id fromBits(long mostSignificantBits, long leastSignificantBits) {
+		return new Id(mostSignificantBits, leastSignificantBits);
 	}
 
 	public String getId() {
+		if (id == null && hasBits)
+			id = new UUID(mostSignificantBits, leastSignificantBits).toString();
 		return id;
 	}
 
+	/**
+	 * 
+	 * @return true if id is a UUID, available as {@link #getMostSignificantBits()} and {@link #getLeastSignificantBits()}
+	 */
+	public boolean hasBits() {
+		if (!parsed)
+			parse();
+		return hasBits;
+	}
+
+	public long getMostSignificantBits() {
+		return mostSignificantBits;
+	}
+
+	public long getLeastSignificantBits() {
+		return leastSignificantBits;
+	}
+
 	@Override
 	public int hashCode() {
+		if (hasBits()) {
+			long hilo = mostSignificantBits ^ leastSignificantBits;
+			return ((int) (hilo >> 32)) ^ (int) hilo;
+		}
 		return id.hashCode();
 	}
 
@@ -55,6 +120,9 @@ public class Id implements Serializable{
 		if (getClass() != obj.getClass())
 			return false;
 		Id other = (Id) obj;
+		if (hasBits() || other.hasBits())
+			return hasBits() && other.hasBits() && mostSignificantBits == other.mostSignificantBits
+					&& leastSignificantBits == other.leastSignificantBits;
 		if (id == null) {
 			if (other.id != null)
 				return false;
@@ -65,6 +133,108 @@ public class Id implements Serializable{
 
 	@Override
 	public String toString() {
-		return id;
+		return getId();
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getId();
+		out.defaultWriteObject();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		parse();
+	}
+
+	/**
+	 * Recognizes ids in the lower case text form produced by
+	 * {@link UUID#toString()}, so that equal ids get the same representation
+	 * regardless of how they were created.
+	 */
+	/**
+	 * Reads the bits of a canonical UUID text form, parsed is set last so a
+	 * thread that sees it also sees the bits.
+	 */
+	private void parse() {
+		if (!hasBits)
+			parseBits();
+		parsed = true;
+	}
+
+	private void parseBits() {
+		if (id == null || id.length() != 36)
+			return;
+
+		long most = 0;
+		long least = 0;
+		for (int i = 0, digits = 0; i < 36; i++) {
+			char c = id.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-')
+					return;
+				continue;
+			}
+
+			int digit;
+			if (c >= '0' && c <= '9')
+				digit = c - '0';
+			else if (c >= 'a' && c <= 'f')
+				digit = c - 'a' + 10;
+			else
+				return;
+
+			if (digits++ < 16)
+				most = (most << 4) | digit;
+			else
+				least = (least << 4) | digit;
+		}
+
+		mostSignificantBits = most;
+		leastSignificantBits = least;
+		hasBits = true;
+	}
+
+	/**
+	 * 48 bits of milliseconds, version, 12 bits of sequence within the
+	 * millisecond, variant and 62 random bits chosen once per thread.
+	 */
+	private static final class TimeOrderedGenerator {
+
+		private static final SecureRandom SEED = new SecureRandom();
+
+		private static final ThreadLocal<TimeOrderedGenerator> GENERATOR = new ThreadLocal<TimeOrderedGenerator>() {
+			@Override
+			protected TimeOrderedGenerator initialValue() {
+				return new TimeOrderedGenerator(seed());
+			}
+		};
+
+		private final long node;
+
+		private long lastMillis;
+
+		private int sequence;
+
+		private TimeOrderedGenerator(long random) {
+			this.node = (random & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		}
+
+		private static long seed() {
+			synchronized (SEED) {
+				return SEED.nextLong();
+			}
+		}
+
+		Id next() {
+			long now = System.currentTimeMillis();
+			if (now > lastMillis) {
+				lastMillis = now;
+				sequence = 0;
+			} else if (++sequence > 0xFFF) {
+				lastMillis++;
+				sequence = 0;
+			}
+			return new Id((lastMillis << 16) | 0x7000L | sequence, node);
+		}
 	}
 }
@@ -8,12 +8,25 @@ public class AddProductCommand {
 	private Id orderId;
 	private Id productId;
 	private int quantity;
+	private Id clientId;
 	
 	public AddProductCommand(Id orderId, Id productId,
 			int quantity) {
+		this(orderId, productId, quantity, null);
+	}
+	
+	/**
+	 * 
+	 * @param clientId
+	 *            client issuing the command, for handlers running outside of
+	 *            the thread of its request
+	 */
+	public AddProductCommand(Id orderId, Id productId,
+			int quantity, Id clientId) {
 		this.orderId = orderId;
 		this.productId = productId;
 		this.quantity = quantity;
+		this.clientId = clientId;
 	}
 	
 	public Id getOrderId() {
@@ -27,4 +40,12 @@ public class AddProductCommand {
 	public int getQuantity() {
 		return quantity;
 	}
+	
+	/**
+	 * 
+	 * @return null if the command was issued without a client
+	 */
+	public Id getClientId() {
+		return clientId;
+	}
 }
\ No newline at end of file
@@ -15,7 +15,13 @@
  */
 package pl.com.bottega.ecommerce.sales.application.api.handler;
 
-import pl.com.bottega.cqrs.command.handler.CommandHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import pl.com.bottega.cqrs.command.handler.BatchCommandHandler;
+import pl.com.bottega.cqrs.command.handler.CommandOutcome;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.sales.application.api.command.AddProductCommand;
 import pl.com.bottega.ecommerce.sales.domain.client.Client;
 import pl.com.bottega.ecommerce.sales.domain.client.ClientRepository;
@@ -28,7 +34,7 @@ import pl.com.bottega.ecommerce.system.application.SystemContext;
 
 
 
-public class AddProductCommandHandler implements CommandHandler<AddProductCommand, Void>{
+public class AddProductCommandHandler implements BatchCommandHandler<AddProductCommand, Void>{
 
 
 	private ReservationRepository reservationRepository;
@@ -50,21 +56,65 @@ public class AddProductCommandHandler implements CommandHandler<AddProductComman
 		Reservation reservation = reservationRepository.load(command.getOrderId());
 		
 		Product product = productRepository.load(command.getProductId());
+		addProduct(reservation, product, command);
+		
+		reservationRepository.save(reservation);
+		
+		return null;
+	}
+	
+	/**
+	 * Loads and saves the reservation once for all commands, which have to
+	 * target the same order. A command rejected by the reservation does not
+	 * affect the others.
+	 */
+	@Override
+	public List<CommandOutcome<Void>> handleBatch(List<AddProductCommand> commands) {
+		Reservation reservation = reservationRepository.load(commands.get(0).getOrderId());
+		
+		Map<Id, Product> products = loadProducts(commands);
+		
+		List<CommandOutcome<Void>> outcomes = new ArrayList<CommandOutcome<Void>>(commands.size());
+		for (AddProductCommand command : commands) {
+			try {
+				addProduct(reservation, products.get(command.getProductId()), command);
+				outcomes.add(CommandOutcome.<Void>success(null));
+			} catch (RuntimeException e) {
+				outcomes.add(CommandOutcome.<Void>failure(e));
+			}
+		}
 		
+		reservationRepository.save(reservation);
+		
+		return outcomes;
+	}
+	
+	private Map<Id, Product> loadProducts(List<AddProductCommand> commands) {
+		List<Id> productIds = new ArrayList<Id>(commands.size());
+		for (AddProductCommand command : commands)
+			productIds.add(command.getProductId());
+		
+		return productRepository.loadAll(productIds);
+	}
+	
+	private void addProduct(Reservation reservation, Product product, AddProductCommand command) {
 		if (! product.isAvailable()){
-			Client client = loadClient();	
+			Client client = loadClient(command);	
 			product = suggestionService.suggestEquivalent(product, client);
 		}
 			
 		reservation.add(product, command.getQuantity());
-		
-		reservationRepository.save(reservation);
-		
-		return null;
 	}
 	
-	private Client loadClient() {
-		return clientRepository.load(systemContext.getSystemUser().getClientId());
+	/**
+	 * Client carried by the command, or the user of the current request when
+	 * the command does not carry one.
+	 */
+	private Client loadClient(AddProductCommand command) {
+		Id clientId = command.getClientId();
+		if (clientId == null)
+			clientId = systemContext.getSystemUser().getClientId();
+		return clientRepository.load(clientId);
 	}
 
 }
@@ -1,6 +1,7 @@
 package pl.com.bottega.ecommerce.sales.domain.client;
 
 import pl.com.bottega.ddd.support.domain.BaseAggregateRoot;
+import pl.com.bottega.ddd.support.domain.DomainResult;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.sales.domain.payment.Payment;
 import pl.com.bottega.ecommerce.sales.domain.payment.PaymentFactory;
@@ -16,6 +17,21 @@ private String name;
 		return new ClientData(id, name);
 	}
 
+	/**
+	 * Detached copy with the same state and version, for repositories that
+	 * must not share instances between their callers.
+	 */
+	public Client copy() {
+		Client copy = new Client();
+		copy.id = id;
+		copy.name = name;
+		copy.paymentFactory = paymentFactory;
+		copy.setVersion(getVersion());
+		if (isRemoved())
+			copy.markAsRemoved();
+		return copy;
+	}
+
 	public boolean canAfford(Money amount) {		
 		return true;//TODO explore domain rules ex: credit limit
 	}
@@ -35,4 +51,16 @@ private String name;
 		
 		return paymentFactory.createPayment(generateSnapshot(), amount);
 	}
+
+	/**
+	 * Same as {@link #charge(Money)}, but reports rejection in the result
+	 * instead of throwing.
+	 */
+	public DomainResult<Payment> tryCharge(Money amount) {
+		if (! canAfford(amount)){
+			return domainRejection("Can not afford: " + amount);
+		}
+
+		return DomainResult.success(paymentFactory.createPayment(generateSnapshot(), amount));
+	}
 }
@@ -0,0 +1,174 @@
+package pl.com.bottega.ecommerce.sales.domain.equivalent;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiFunction;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.client.Client;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+
+/**
+ * Suggests the available product of the same type and currency whose price
+ * is closest to the price of the problematic one (the cheaper one on a tie).<br>
+ * Products are kept in an index sorted by price, maintained incrementally
+ * with {@link #add(Product)} and {@link #remove(Product)}, so a suggestion
+ * takes logarithmic time in the size of the catalog. Archived products are
+ * also dropped from the index when a lookup comes across them.<br>
+ * Thread safe. Client is not taken into account yet.
+ */
+public class IndexedSuggestionService implements SuggestionService {
+
+	private static final Comparator<Product> BY_PRICE = new Comparator<Product>() {
+		@Override
+		public int compare(Product first, Product second) {
+			if (first.getPrice().lessThan(second.getPrice()))
+				return -1;
+			if (first.getPrice().greaterThan(second.getPrice()))
+				return 1;
+			return first.getId().getId().compareTo(second.getId().getId());
+		}
+	};
+
+	private final ConcurrentMap<IndexKey, NavigableSet<Product>> index = new ConcurrentHashMap<IndexKey, NavigableSet<Product>>();
+
+	private final ConcurrentMap<Id, Product> indexed = new ConcurrentHashMap<Id, Product>();
+
+	public IndexedSuggestionService() {
+	}
+
+	public IndexedSuggestionService(Collection<Product> catalog) {
+		for (Product product : catalog)
+			add(product);
+	}
+
+	/**
+	 * Indexes new product or replaces previously indexed one with the same id.
+	 * Archived products are ignored.<br>
+	 * Sorted sets are updated within the compute of the product's id, so
+	 * concurrent updates of one product never leave two of its instances
+	 * indexed.
+	 */
+	public void add(final Product product) {
+		if (!product.isAvailable()) {
+			remove(product);
+			return;
+		}
+
+		indexed.compute(product.getId(), new BiFunction<Id, Product, Product>() {
+			@Override
+			public Product apply(Id id, Product previous) {
+				if (previous != null && previous != product)
+					productsLike(previous).remove(previous);
+				productsLike(product).add(product);
+				return product;
+			}
+		});
+	}
+
+	public void remove(Product product) {
+		indexed.computeIfPresent(product.getId(), new BiFunction<Id, Product, Product>() {
+			@Override
+			public Product apply(Id id, Product previous) {
+				productsLike(previous).remove(previous);
+				return null;
+			}
+		});
+	}
+
+	public int size() {
+		return indexed.size();
+	}
+
+	@Override
+	public Product suggestEquivalent(Product problematicProduct, Client client) {
+		NavigableSet<Product> products = index.get(new IndexKey(problematicProduct));
+		if (products == null)
+			return problematicProduct;
+
+		Product cheaper = nextAvailable(products.headSet(problematicProduct, false).descendingIterator());
+		Product dearer = nextAvailable(products.tailSet(problematicProduct, false).iterator());
+		if (cheaper == null)
+			return dearer != null ? dearer : problematicProduct;
+		if (dearer == null)
+			return cheaper;
+
+		if (problematicProduct.getPrice().subtract(cheaper.getPrice())
+				.lessOrEquals(dearer.getPrice().subtract(problematicProduct.getPrice())))
+			return cheaper;
+		return dearer;
+	}
+
+	private Product nextAvailable(Iterator<Product> candidates) {
+		while (candidates.hasNext()) {
+			Product candidate = candidates.next();
+			if (candidate.isAvailable())
+				return candidate;
+			removeArchived(candidate);
+		}
+		return null;
+	}
+
+	/**
+	 * Drops candidate unless it has been replaced meanwhile
+	 */
+	private void removeArchived(final Product candidate) {
+		indexed.computeIfPresent(candidate.getId(), new BiFunction<Id, Product, Product>() {
+			@Override
+			public Product apply(Id id, Product current) {
+				if (current != candidate)
+					return current;
+				productsLike(candidate).remove(candidate);
+				return null;
+			}
+		});
+	}
+
+	private NavigableSet<Product> productsLike(Product product) {
+		IndexKey key = new IndexKey(product);
+		NavigableSet<Product> products = index.get(key);
+		if (products == null) {
+			products = new ConcurrentSkipListSet<Product>(BY_PRICE);
+			NavigableSet<Product> raced = index.putIfAbsent(key, products);
+			if (raced != null)
+				products = raced;
+		}
+		return products;
+	}
+
+	/**
+	 * Only prices in the same currency are comparable
+	 */
+	private static class IndexKey {
+
+		private final ProductType productType;
+
+		private final String currencyCode;
+
+		IndexKey(Product product) {
+			this.productType = product.getProductType();
+			this.currencyCode = product.getPrice().getCurrencyCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * productType.hashCode() + currencyCode.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof IndexKey))
+				return false;
+			IndexKey other = (IndexKey) obj;
+			return productType == other.productType && currencyCode.equals(other.currencyCode);
+		}
+	}
+}
@@ -15,28 +15,216 @@
  */
 package pl.com.bottega.ecommerce.sales.domain.invoicing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAccumulator;
 
 public class BookKeeper {
 
+	/**
+	 * Number of requests below which a batch is issued without further
+	 * splitting.
+	 */
+	private static final int BATCH_THRESHOLD = 16;
+
 	private InvoiceFactory invoiceFactory;
+
+	private InvoiceJournal invoiceJournal;
+
 	public BookKeeper(InvoiceFactory invoiceFactory) {
 		this.invoiceFactory = invoiceFactory;
 	}
+
+	/**
+	 * 
+	 * @param invoiceJournal
+	 *            receives every issued invoice, before it is returned
+	 */
+	public BookKeeper(InvoiceFactory invoiceFactory, InvoiceJournal invoiceJournal) {
+		this.invoiceFactory = invoiceFactory;
+		this.invoiceJournal = invoiceJournal;
+	}
 	public Invoice issuance(InvoiceRequest invoiceRequest, TaxPolicy taxPolicy) {
 		Invoice invoice = invoiceFactory.create(invoiceRequest.getClientData());
 
-		for (RequestItem item : invoiceRequest.getItems()) {
-			Money net = item.getTotalCost();
-			Tax tax = taxPolicy.calculateTax(item.getProductData().getType(),
-					net);
+		for (RequestItem item : invoiceRequest.getItems())
+			invoice.addItem(invoiceLine(item, taxPolicy));
 
-			InvoiceLine invoiceLine = new InvoiceLine(item.getProductData(),
-					item.getQuantity(), net, tax);
-			invoice.addItem(invoiceLine);
-		}
+		if (invoiceJournal != null)
+			journal(invoice);
 
 		return invoice;
 	}
 
+	/**
+	 * Appending waits until the invoice is durable. The wait is a managed
+	 * block, so that a fork-join pool running the issuance, ex: the common
+	 * pool used by {@link #issueAll(Collection, TaxPolicy)}, can compensate
+	 * with another worker instead of being starved.
+	 */
+	private void journal(Invoice invoice) {
+		JournalAppend append = new JournalAppend(invoice);
+		try {
+			ForkJoinPool.managedBlock(append);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while journaling invoice " + invoice.getId(), e);
+		}
+	}
+
+	/**
+	 * Streaming mode of {@link #issuance(InvoiceRequest, TaxPolicy)}
+	 * 
+	 * @see #issuance(ClientData, Iterator, TaxPolicy, InvoiceLineSink)
+	 */
+	public InvoiceSummary issuance(InvoiceRequest invoiceRequest, TaxPolicy taxPolicy, InvoiceLineSink sink) {
+		return issuance(invoiceRequest.getClientData(), invoiceRequest.getItems().iterator(), taxPolicy, sink);
+	}
+
+	/**
+	 * Issues invoice without materializing it: items are taken one by one,
+	 * each taxed line is passed to the sink and only the running totals are
+	 * kept. The invoice is not passed to the journal, sink is responsible for
+	 * the lines.
+	 * 
+	 * @param items
+	 *            consumed up to the end
+	 * @return totals of the issued invoice
+	 */
+	public InvoiceSummary issuance(ClientData client, Iterator<RequestItem> items, TaxPolicy taxPolicy,
+			InvoiceLineSink sink) {
+		Invoice header = invoiceFactory.create(client);
+		sink.begin(header.getId(), client);
+
+		MoneyAccumulator net = new MoneyAccumulator();
+		MoneyAccumulator gros = new MoneyAccumulator();
+		int lineCount = 0;
+		while (items.hasNext()) {
+			InvoiceLine invoiceLine = invoiceLine(items.next(), taxPolicy);
+			net.add(invoiceLine.getNet());
+			gros.add(invoiceLine.getGros());
+			lineCount++;
+			sink.accept(invoiceLine);
+		}
+
+		InvoiceSummary summary = new InvoiceSummary(header.getId(), client, lineCount, net.total(), gros.total());
+		sink.end(summary);
+		return summary;
+	}
+
+	/**
+	 * Issues invoices for all requests in parallel on the common fork-join
+	 * pool.
+	 * 
+	 * @see #issueAll(Collection, TaxPolicy, ForkJoinPool)
+	 */
+	public List<IssuanceResult> issueAll(Collection<InvoiceRequest> invoiceRequests, TaxPolicy taxPolicy) {
+		return issueAll(invoiceRequests, taxPolicy, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Issues invoices for all requests in parallel on the given pool. A
+	 * request that fails does not abort the batch, its failure is reported in
+	 * its result instead.<br>
+	 * taxPolicy is called concurrently and has to be thread safe.
+	 * 
+	 * @param invoiceRequests
+	 * @param taxPolicy
+	 * @param pool
+	 * @return one result per request, in the iteration order of
+	 *         invoiceRequests
+	 */
+	public List<IssuanceResult> issueAll(Collection<InvoiceRequest> invoiceRequests, TaxPolicy taxPolicy,
+			ForkJoinPool pool) {
+		InvoiceRequest[] requests = invoiceRequests.toArray(new InvoiceRequest[invoiceRequests.size()]);
+		IssuanceResult[] results = new IssuanceResult[requests.length];
+
+		pool.invoke(new IssuanceTask(requests, results, 0, requests.length, taxPolicy));
+
+		return new ArrayList<IssuanceResult>(Arrays.asList(results));
+	}
+
+	private InvoiceLine invoiceLine(RequestItem item, TaxPolicy taxPolicy) {
+		Money net = item.getTotalCost();
+		Tax tax = taxPolicy.calculateTax(item.getProductData().getType(),
+				net);
+
+		return new InvoiceLine(item.getProductData(),
+				item.getQuantity(), net, tax);
+	}
+
+	private IssuanceResult issueSafely(InvoiceRequest invoiceRequest, TaxPolicy taxPolicy) {
+		try {
+			return IssuanceResult.issued(invoiceRequest, issuance(invoiceRequest, taxPolicy));
+		} catch (RuntimeException e) {
+			return IssuanceResult.failed(invoiceRequest, e);
+		}
+	}
+
+	private class JournalAppend implements ForkJoinPool.ManagedBlocker {
+
+		private final Invoice invoice;
+
+		private boolean appended;
+
+		JournalAppend(Invoice invoice) {
+			this.invoice = invoice;
+		}
+
+		@Override
+		public boolean block() {
+			invoiceJournal.append(invoice);
+			appended = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return appended;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class IssuanceTask extends RecursiveAction {
+
+		private final InvoiceRequest[] requests;
+
+		private final IssuanceResult[] results;
+
+		private final int from;
+
+		private final int to;
+
+		private final TaxPolicy taxPolicy;
+
+		IssuanceTask(InvoiceRequest[] requests, IssuanceResult[] results, int from, int to, TaxPolicy taxPolicy) {
+			this.requests = requests;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.taxPolicy = taxPolicy;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_THRESHOLD) {
+				for (int i = from; i < to; i++)
+					results[i] = issueSafely(requests[i], taxPolicy);
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new IssuanceTask(requests, results, from, middle, taxPolicy),
+					new IssuanceTask(requests, results, middle, to, taxPolicy));
+		}
+	}
+
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.nio.ByteBuffer;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductDataCodec;
+import pl.com.bottega.ecommerce.sharedkernel.BinaryFormat;
+
+/**
+ * Binary codec of {@link Invoice} and {@link InvoiceLine}.<br>
+ * Gross values and invoice totals are not written, they are recalculated on
+ * read.
+ * 
+ * @see BinaryFormat
+ */
+public final class InvoiceCodec {
+
+	private InvoiceCodec() {
+	}
+
+	public static void encode(Invoice invoice, ByteBuffer buffer) {
+		BinaryFormat.putVersion(buffer);
+		BinaryFormat.putId(buffer, invoice.getId());
+		BinaryFormat.putClientData(buffer, invoice.getClient());
+		buffer.putInt(invoice.getItems().size());
+		for (InvoiceLine line : invoice.getItems())
+			write(line, buffer);
+	}
+
+	public static Invoice decode(ByteBuffer buffer) {
+		BinaryFormat.checkVersion(buffer);
+		Id id = BinaryFormat.getId(buffer);
+		ClientData client = BinaryFormat.getClientData(buffer);
+		Invoice invoice = new Invoice(id, client);
+		int size = buffer.getInt();
+		for (int i = 0; i < size; i++)
+			invoice.addItem(read(buffer));
+		return invoice;
+	}
+
+	/**
+	 * Writes invoice with its net and gross totals after the id, so that they
+	 * can be read without decoding the client and lines.
+	 */
+	public static void encodeWithTotals(Invoice invoice, ByteBuffer buffer) {
+		BinaryFormat.putVersion(buffer);
+		BinaryFormat.putId(buffer, invoice.getId());
+		BinaryFormat.putMoney(buffer, invoice.getNet());
+		BinaryFormat.putMoney(buffer, invoice.getGros());
+		BinaryFormat.putClientData(buffer, invoice.getClient());
+		buffer.putInt(invoice.getItems().size());
+		for (InvoiceLine line : invoice.getItems())
+			write(line, buffer);
+	}
+
+	/**
+	 * Reads invoice written by {@link #encodeWithTotals(Invoice, ByteBuffer)},
+	 * totals are recalculated from the lines.
+	 */
+	public static Invoice decodeWithTotals(ByteBuffer buffer) {
+		BinaryFormat.checkVersion(buffer);
+		Id id = BinaryFormat.getId(buffer);
+		BinaryFormat.getMoney(buffer);
+		BinaryFormat.getMoney(buffer);
+		Invoice invoice = new Invoice(id, BinaryFormat.getClientData(buffer));
+		int size = buffer.getInt();
+		for (int i = 0; i < size; i++)
+			invoice.addItem(read(buffer));
+		return invoice;
+	}
+
+	public static void encode(InvoiceLine line, ByteBuffer buffer) {
+		BinaryFormat.putVersion(buffer);
+		write(line, buffer);
+	}
+
+	public static InvoiceLine decodeLine(ByteBuffer buffer) {
+		BinaryFormat.checkVersion(buffer);
+		return read(buffer);
+	}
+
+	/**
+	 * Writes line without the format version, as part of an enclosing record.
+	 */
+	public static void write(InvoiceLine line, ByteBuffer buffer) {
+		ProductDataCodec.write(line.getProduct(), buffer);
+		buffer.putInt(line.getQuantity());
+		BinaryFormat.putMoney(buffer, line.getNet());
+		BinaryFormat.putMoney(buffer, line.getTax().getAmount());
+		BinaryFormat.putString(buffer, line.getTax().getDescription());
+	}
+
+	public static InvoiceLine read(ByteBuffer buffer) {
+		return new InvoiceLine(ProductDataCodec.read(buffer), buffer.getInt(), BinaryFormat.getMoney(buffer),
+				new Tax(BinaryFormat.getMoney(buffer), BinaryFormat.getString(buffer)));
+	}
+}
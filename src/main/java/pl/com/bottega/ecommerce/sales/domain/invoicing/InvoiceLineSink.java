@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Receives lines of an invoice issued in streaming mode, one at a time, ex:
+ * to write them out or export them.
+ * 
+ * @see BookKeeper#issuance(ClientData, java.util.Iterator, TaxPolicy, InvoiceLineSink)
+ */
+public interface InvoiceLineSink {
+
+	/**
+	 * Called before the first line.
+	 */
+	public default void begin(Id invoiceId, ClientData client) {
+	}
+
+	public void accept(InvoiceLine line);
+
+	/**
+	 * Called after the last line, not called if issuance failed.
+	 */
+	public default void end(InvoiceSummary summary) {
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Totals of an invoice issued in streaming mode, whose lines went to an
+ * {@link InvoiceLineSink}.
+ */
+public class InvoiceSummary {
+
+	private Id id;
+
+	private ClientData client;
+
+	private int lineCount;
+
+	private Money net;
+
+	private Money gros;
+
+	InvoiceSummary(Id id, ClientData client, int lineCount, Money net, Money gros) {
+		this.id = id;
+		this.client = client;
+		this.lineCount = lineCount;
+		this.net = net;
+		this.gros = gros;
+	}
+
+	public Id getId() {
+		return id;
+	}
+
+	public ClientData getClient() {
+		return client;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public Money getNet() {
+		return net;
+	}
+
+	public Money getGros() {
+		return gros;
+	}
+
+	public Money getTax() {
+		return gros.subtract(net);
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+/**
+ * Outcome of issuing a single {@link InvoiceRequest} within a batch: either
+ * the issued invoice or the failure that prevented it.
+ */
+public class IssuanceResult {
+
+	private InvoiceRequest request;
+
+	private Invoice invoice;
+
+	private RuntimeException failure;
+
+	private IssuanceResult(InvoiceRequest request, Invoice invoice, RuntimeException failure) {
+		this.request = request;
+		this.invoice = invoice;
+		this.failure = failure;
+	}
+
+	static IssuanceResult issued(InvoiceRequest request, Invoice invoice) {
+		return new IssuanceResult(request, invoice, null);
+	}
+
+	static IssuanceResult failed(InvoiceRequest request, RuntimeException failure) {
+		return new IssuanceResult(request, null, failure);
+	}
+
+	public boolean isIssued() {
+		return failure == null;
+	}
+
+	public InvoiceRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * 
+	 * @return issued invoice or null if issuance failed
+	 */
+	public Invoice getInvoice() {
+		return invoice;
+	}
+
+	/**
+	 * 
+	 * @return cause of the failure or null if the invoice was issued
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+}
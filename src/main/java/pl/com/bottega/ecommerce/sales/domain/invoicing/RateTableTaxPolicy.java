@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Tax policy driven by a fixed rate per product type.<br>
+ * Rates are resolved into an array indexed by product type when the policy
+ * is created. Optionally remembers taxes calculated for the most recently
+ * seen (product type, net) pairs, which pays off when the same amounts repeat
+ * across invoice lines.<br>
+ * Thread safe.
+ */
+public class RateTableTaxPolicy implements TaxPolicy {
+
+	public static class Rate {
+
+		private BigDecimal rate;
+
+		private String description;
+
+		/**
+		 * 
+		 * @param rate
+		 *            fraction of net value, ex: 0.23
+		 * @param description
+		 *            description of the resulting tax
+		 */
+		public Rate(BigDecimal rate, String description) {
+			this.rate = rate;
+			this.description = description;
+		}
+
+		public BigDecimal getRate() {
+			return rate;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	private final Rate[] rates = new Rate[ProductType.values().length];
+
+	private final int memoCapacity;
+
+	private final ConcurrentMap<MemoKey, Tax> memo;
+
+	public RateTableTaxPolicy(Map<ProductType, Rate> rateTable) {
+		this(rateTable, 0);
+	}
+
+	/**
+	 * 
+	 * @param rateTable
+	 * @param memoCapacity
+	 *            maximum number of remembered results, 0 disables memoization
+	 */
+	public RateTableTaxPolicy(Map<ProductType, Rate> rateTable, int memoCapacity) {
+		if (memoCapacity < 0)
+			throw new IllegalArgumentException("Negative memo capacity: " + memoCapacity);
+
+		for (Map.Entry<ProductType, Rate> entry : rateTable.entrySet())
+			rates[entry.getKey().ordinal()] = entry.getValue();
+
+		this.memoCapacity = memoCapacity;
+		this.memo = memoCapacity > 0 ? new ConcurrentHashMap<MemoKey, Tax>(memoCapacity) : null;
+	}
+
+	@Override
+	public Tax calculateTax(ProductType productType, Money net) {
+		Rate rate = rates[productType.ordinal()];
+		if (rate == null)
+			throw new IllegalArgumentException("No tax rate for " + productType);
+
+		if (memo == null)
+			return tax(rate, net);
+
+		MemoKey key = new MemoKey(productType, net);
+		Tax tax = memo.get(key);
+		if (tax == null) {
+			tax = tax(rate, net);
+			if (memo.size() >= memoCapacity)
+				memo.clear();
+			memo.put(key, tax);
+		}
+		return tax;
+	}
+
+	private Tax tax(Rate rate, Money net) {
+		return new Tax(net.multiplyBy(rate.rate), rate.description);
+	}
+
+	private static class MemoKey {
+
+		private final ProductType productType;
+
+		private final Money net;
+
+		MemoKey(ProductType productType, Money net) {
+			this.productType = productType;
+			this.net = net;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * productType.hashCode() + net.hashCode();
+		}
+
+		/**
+		 * Money equality ignores the currency of zero amounts, the memo must
+		 * not.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof MemoKey))
+				return false;
+			MemoKey other = (MemoKey) obj;
+			return productType == other.productType && net.equals(other.net)
+					&& net.getCurrencyCode().equals(other.net.getCurrencyCode());
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import java.util.Collections;
+import java.util.List;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Policy evaluated once for all available lines of an offer, for discounts
+ * that depend on the whole basket (volume tiers, bundles).
+ */
+public interface BulkDiscountPolicy extends DiscountPolicy {
+
+	/**
+	 * 
+	 * @param lines
+	 *            available lines of the offer
+	 * @return one discount per line, in the order of lines; null when line is
+	 *         not discounted
+	 */
+	public List<Discount> applyDiscounts(List<DiscountLine> lines);
+
+	/**
+	 * Treats the product as the only line of a basket.
+	 */
+	@Override
+	public default Discount applyDiscount(Product product, int quantity, Money regularCost) {
+		return applyDiscounts(Collections.singletonList(new DiscountLine(product, quantity, regularCost))).get(0);
+	}
+}
@@ -0,0 +1,37 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * One line of a basket, as seen by a {@link BulkDiscountPolicy}
+ */
+public class DiscountLine {
+	private Product product;
+
+	private int quantity;
+
+	private Money regularCost;
+
+	public DiscountLine(Product product, int quantity, Money regularCost) {
+		this.product = product;
+		this.quantity = quantity;
+		this.regularCost = regularCost;
+	}
+
+	public Product getProduct() {
+		return product;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * 
+	 * @return the same regular cost {@link DiscountPolicy#applyDiscount(Product, int, Money)} gets
+	 */
+	public Money getRegularCost() {
+		return regularCost;
+	}
+}
@@ -1,19 +1,38 @@
 package pl.com.bottega.ecommerce.sales.domain.offer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAccumulator;
 
 public class Offer {
 private List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 	
 	private List<OfferItem> unavailableItems = new ArrayList<OfferItem>();
 	
+	private Map<Id, OfferItem> availableItemsByProduct;
+	
+	private Money totalCost;
+	
+	private long fingerprint;
 	
 	public Offer(List<OfferItem> availabeItems, List<OfferItem> unavailableItems) {
 		this.availabeItems = availabeItems;
 		this.unavailableItems = unavailableItems;
+		
+		this.availableItemsByProduct = new HashMap<Id, OfferItem>(availabeItems.size() * 2);
+		long structure = 0;
+		for (OfferItem item : availabeItems) {
+			Id productId = item.getProductData().getProductId();
+			if (!availableItemsByProduct.containsKey(productId))
+				availableItemsByProduct.put(productId, item);
+			structure += mix(31L * (productId == null ? 0 : productId.hashCode()) + item.getQuantity());
+		}
+		this.fingerprint = structure;
 	}
 
 	public List<OfferItem> getAvailabeItems() {
@@ -24,6 +43,32 @@ private List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 		return unavailableItems;
 	}
 
+	/**
+	 * Calculated once, on first use.
+	 * 
+	 * @return sum of total costs of available items
+	 * @throws IllegalArgumentException
+	 *             if items are priced in different currencies
+	 */
+	public Money getTotalCost() {
+		if (totalCost == null) {
+			MoneyAccumulator total = new MoneyAccumulator();
+			for (OfferItem item : availabeItems)
+				total.add(item.getTotalCost());
+			totalCost = total.total();
+		}
+		return totalCost;
+	}
+
+	/**
+	 * 
+	 * @return hash of products and quantities of available items, independent
+	 *         of their order
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -57,9 +102,20 @@ private List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 	 * @return
 	 */
 	public boolean sameAs(Offer seenOffer, double delta) {
+		if (seenOffer == this) {
+			for (OfferItem item : availabeItems) {
+				if (!item.sameAs(item, delta))
+					return false;
+			}
+			return true;
+		}
+
 		if (! (availabeItems.size() == seenOffer.availabeItems.size()))
 			return false;
 		
+		if (fingerprint != seenOffer.fingerprint)
+			return false;
+		
 		for (OfferItem item : availabeItems) {
 			OfferItem sameItem = seenOffer.findItem(item.getProductData().getProductId());
 			if (sameItem == null)
@@ -72,11 +128,16 @@ private List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 	}
 
 	private OfferItem findItem(Id productId) {
-		for (OfferItem item : availabeItems){
-			if (item.getProductData().getProductId().equals(productId))
-				return item;
-		}
-		return null;
+		return availableItemsByProduct.get(productId);
+	}
+
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
 	}
 	
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductDataCodec;
+import pl.com.bottega.ecommerce.sharedkernel.BinaryFormat;
+
+/**
+ * Binary codec of {@link Offer} and {@link OfferItem}.<br>
+ * Item total costs are not written, they are recalculated on read.
+ * 
+ * @see BinaryFormat
+ */
+public final class OfferCodec {
+
+	private OfferCodec() {
+	}
+
+	public static void encode(Offer offer, ByteBuffer buffer) {
+		BinaryFormat.putVersion(buffer);
+		writeItems(offer.getAvailabeItems(), buffer);
+		writeItems(offer.getUnavailableItems(), buffer);
+	}
+
+	public static Offer decode(ByteBuffer buffer) {
+		BinaryFormat.checkVersion(buffer);
+		List<OfferItem> availableItems = readItems(buffer);
+		List<OfferItem> unavailableItems = readItems(buffer);
+		return new Offer(availableItems, unavailableItems);
+	}
+
+	public static void encode(OfferItem item, ByteBuffer buffer) {
+		BinaryFormat.putVersion(buffer);
+		write(item, buffer);
+	}
+
+	public static OfferItem decodeItem(ByteBuffer buffer) {
+		BinaryFormat.checkVersion(buffer);
+		return read(buffer);
+	}
+
+	/**
+	 * Writes item without the format version, as part of an enclosing record.
+	 */
+	public static void write(OfferItem item, ByteBuffer buffer) {
+		ProductDataCodec.write(item.getProductData(), buffer);
+		buffer.putInt(item.getQuantity());
+		Discount discount = item.getDiscount();
+		if (BinaryFormat.putPresence(buffer, discount)) {
+			BinaryFormat.putString(buffer, discount.getCause());
+			BinaryFormat.putMoney(buffer, discount.getValue());
+		}
+	}
+
+	public static OfferItem read(ByteBuffer buffer) {
+		return new OfferItem(ProductDataCodec.read(buffer), buffer.getInt(), readDiscount(buffer));
+	}
+
+	private static Discount readDiscount(ByteBuffer buffer) {
+		if (!BinaryFormat.getPresence(buffer))
+			return null;
+		return new Discount(BinaryFormat.getString(buffer), BinaryFormat.getMoney(buffer));
+	}
+
+	private static void writeItems(List<OfferItem> items, ByteBuffer buffer) {
+		buffer.putInt(items.size());
+		for (OfferItem item : items)
+			write(item, buffer);
+	}
+
+	private static List<OfferItem> readItems(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		List<OfferItem> items = new ArrayList<OfferItem>(size);
+		for (int i = 0; i < size; i++)
+			items.add(read(buffer));
+		return items;
+	}
+}
@@ -17,6 +17,7 @@ package pl.com.bottega.ecommerce.sales.domain.offer;
 
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAccumulator;
 
 public class OfferItem {
 private ProductData productData;
@@ -41,7 +42,30 @@ private ProductData productData;
 		if (discount != null)
 			 discountValue =  discountValue.subtract(discount.getValue());
 		
-		this.totalCost = productData.getPrice().multiplyBy(quantity).subtract(discountValue);
+		MoneyAccumulator cost = new MoneyAccumulator();
+		cost.add(productData.getPrice(), quantity);
+		cost.subtract(discountValue);
+		this.totalCost = cost.total();
+	}
+
+	private OfferItem(ProductData productData, int quantity, Discount discount, Money totalCost) {
+		this.productData = productData;
+		this.quantity = quantity;
+		this.discount = discount;
+		this.totalCost = totalCost;
+	}
+
+	/**
+	 * Same line based on a newer snapshot of the same product, cost is not
+	 * calculated again.
+	 * 
+	 * @param productData newer snapshot of this line's product
+	 * @return copy of this line holding the given snapshot
+	 */
+	public OfferItem withSnapshot(ProductData productData) {
+		if (!productData.getProductId().equals(this.productData.getProductId()))
+			throw new IllegalArgumentException("Snapshot of a different product");
+		return new OfferItem(productData, quantity, discount, totalCost);
 	}
 
 	public ProductData getProductData() {
@@ -110,6 +134,9 @@ private ProductData productData;
 	 * @return
 	 */
 	public boolean sameAs(OfferItem item, double delta) {
+		if (item == this)
+			return totalCost.multiplyBy(delta / 100).greaterThan(Money.ZERO);
+
 		if (! productData.equals(item.productData))
 			return false;
 		
@@ -0,0 +1,42 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Presents a per item {@link DiscountPolicy} as a {@link BulkDiscountPolicy}
+ */
+public class PerItemDiscountPolicyAdapter implements BulkDiscountPolicy {
+
+	private final DiscountPolicy policy;
+
+	public PerItemDiscountPolicyAdapter(DiscountPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * 
+	 * @return given policy if it is a bulk one already, adapted otherwise
+	 */
+	public static BulkDiscountPolicy bulk(DiscountPolicy policy) {
+		if (policy instanceof BulkDiscountPolicy)
+			return (BulkDiscountPolicy) policy;
+		return new PerItemDiscountPolicyAdapter(policy);
+	}
+
+	@Override
+	public List<Discount> applyDiscounts(List<DiscountLine> lines) {
+		List<Discount> discounts = new ArrayList<Discount>(lines.size());
+		for (DiscountLine line : lines)
+			discounts.add(policy.applyDiscount(line.getProduct(), line.getQuantity(), line.getRegularCost()));
+		return discounts;
+	}
+
+	@Override
+	public Discount applyDiscount(Product product, int quantity, Money regularCost) {
+		return policy.applyDiscount(product, quantity, regularCost);
+	}
+}
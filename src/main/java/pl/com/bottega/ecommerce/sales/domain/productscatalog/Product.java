@@ -14,11 +14,18 @@ public class Product extends BaseAggregateRoot {
 
     private ProductType productType;
 
+    private Date bestBefore;
+
     public Product(Id aggregateId, Money price, String name, ProductType productType) {
+        this(aggregateId, price, name, productType, null);
+    }
+
+    public Product(Id aggregateId, Money price, String name, ProductType productType, Date bestBefore) {
         this.id = aggregateId;
         this.price = price;
         this.name = name;
         this.productType = productType;
+        this.bestBefore = copy(bestBefore);
     }
 
     public boolean isAvailable() {
@@ -37,7 +44,38 @@ public class Product extends BaseAggregateRoot {
         return productType;
     }
 
+    /**
+     * 
+     * @return null if product does not go off
+     */
+    public Date getBestBefore() {
+        return copy(bestBefore);
+    }
+
+    /**
+     * New date becomes visible to repository queries after the product is saved.
+     */
+    public void changeBestBefore(Date bestBefore) {
+        this.bestBefore = copy(bestBefore);
+    }
+
+    /**
+     * Detached copy with the same state and version, for repositories that
+     * must not share instances between their callers.
+     */
+    public Product copy() {
+        Product copy = new Product(id, price, name, productType, bestBefore);
+        copy.setVersion(getVersion());
+        if (isRemoved())
+            copy.markAsRemoved();
+        return copy;
+    }
+
     public ProductData generateSnapshot() {
         return new ProductData(getId(), price, name, productType, new Date());
     }
+
+    private static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
 }
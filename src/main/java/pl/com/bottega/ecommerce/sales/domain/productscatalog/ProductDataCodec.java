@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.productscatalog;
+
+import java.nio.ByteBuffer;
+
+import pl.com.bottega.ecommerce.sharedkernel.BinaryFormat;
+
+/**
+ * Binary codec of {@link ProductData}.
+ * 
+ * @see BinaryFormat
+ */
+public final class ProductDataCodec {
+
+	private ProductDataCodec() {
+	}
+
+	public static void encode(ProductData productData, ByteBuffer buffer) {
+		BinaryFormat.putVersion(buffer);
+		write(productData, buffer);
+	}
+
+	public static ProductData decode(ByteBuffer buffer) {
+		BinaryFormat.checkVersion(buffer);
+		return read(buffer);
+	}
+
+	/**
+	 * Writes productData without the format version, as part of an enclosing
+	 * record.
+	 */
+	public static void write(ProductData productData, ByteBuffer buffer) {
+		BinaryFormat.putId(buffer, productData.getProductId());
+		BinaryFormat.putMoney(buffer, productData.getPrice());
+		BinaryFormat.putString(buffer, productData.getName());
+		buffer.put(productData.getType() == null ? -1 : (byte) productData.getType().ordinal());
+		BinaryFormat.putDate(buffer, productData.getSnapshotDate());
+	}
+
+	public static ProductData read(ByteBuffer buffer) {
+		return new ProductData(BinaryFormat.getId(buffer), BinaryFormat.getMoney(buffer),
+				BinaryFormat.getString(buffer), productType(buffer.get()), BinaryFormat.getDate(buffer));
+	}
+
+	private static ProductType productType(byte ordinal) {
+		return ordinal < 0 ? null : ProductType.values()[ordinal];
+	}
+}
@@ -1,11 +1,33 @@
 package pl.com.bottega.ecommerce.sales.domain.productscatalog;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 
 public interface ProductRepository {
+	public void save(Product product);
+
 	public Product load(Id productId);
 
+	/**
+	 * Loads several products at once.
+	 * 
+	 * @param productIds
+	 * @return found products by their id, in the iteration order of
+	 *         productIds; ids of missing products are absent
+	 */
+	public default Map<Id, Product> loadAll(Collection<Id> productIds) {
+		Map<Id, Product> products = new LinkedHashMap<Id, Product>();
+		for (Id productId : productIds) {
+			Product product = load(productId);
+			if (product != null)
+				products.put(productId, product);
+		}
+		return products;
+	}
+
 	public List<Product> findProductWhereBestBeforeExpiredIn(int days);
 }
@@ -1,13 +1,19 @@
 package pl.com.bottega.ecommerce.sales.domain.reservation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import pl.com.bottega.ddd.support.domain.BaseAggregateRoot;
+import pl.com.bottega.ddd.support.domain.DomainResult;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.offer.BulkDiscountPolicy;
 import pl.com.bottega.ecommerce.sales.domain.offer.Discount;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountLine;
 import pl.com.bottega.ecommerce.sales.domain.offer.DiscountPolicy;
 import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
 import pl.com.bottega.ecommerce.sales.domain.offer.OfferItem;
@@ -25,11 +31,27 @@ public class Reservation extends BaseAggregateRoot{
 	
 	private List<ReservationItem> items;
 
+	/**
+	 * items by product id, built lazily from items
+	 */
+	private transient Map<Id, ReservationItem> itemsByProduct;
+
 	
 	private ClientData clientData;
 
 	private Date createDate;
 
+	/**
+	 * changes made since the reservation was last saved, at most one per
+	 * product and the closing
+	 */
+	private transient List<ReservationEvent> uncommittedEvents = new ArrayList<ReservationEvent>();
+
+	/**
+	 * positions in uncommittedEvents by product id, built lazily
+	 */
+	private transient Map<Id, Integer> uncommittedEventPositions;
+
 	@SuppressWarnings("unused")
 	private Reservation() {
 	}
@@ -43,44 +65,141 @@ public class Reservation extends BaseAggregateRoot{
 		this.items = new ArrayList<ReservationItem>();
 	}
 
-	public void add(Product product, int quantity) {
+	/**
+	 * Rebuilds reservation by replaying its events.
+	 * 
+	 * @param products
+	 *            products referenced by the events, by id
+	 * @throws IllegalStateException
+	 *             if an event references a product missing in products
+	 */
+	public static Reservation restore(Id aggregateId, ClientData clientData, Date createDate,
+			List<ReservationEvent> events, Map<Id, Product> products) {
+		Reservation reservation = new Reservation(aggregateId, ReservationStatus.OPENED, clientData, createDate);
+		for (ReservationEvent event : events)
+			reservation.replay(event, products);
+		return reservation;
+	}
+
+	/**
+	 * Detached copy with the same state, version and uncommitted events, for
+	 * repositories that must not share instances between their callers.
+	 */
+	public Reservation copy() {
+		Reservation copy = new Reservation(id, status, clientData, createDate);
+		for (ReservationItem item : items)
+			copy.items.add(new ReservationItem(item.getProduct(), item.getQuantity()));
+		copy.uncommittedEvents.addAll(uncommittedEvents);
+		copy.setVersion(getVersion());
+		if (isRemoved())
+			copy.markAsRemoved();
+		return copy;
+	}
+
+	/**
+	 * 
+	 * @return changes made since the reservation was loaded or last saved, in
+	 *         order
+	 */
+	public List<ReservationEvent> getUncommittedEvents() {
+		return Collections.unmodifiableList(uncommittedEvents);
+	}
+
+	/**
+	 * Meant for repositories - records that changes have been stored.
+	 */
+	public void markEventsCommitted() {
+		uncommittedEvents.clear();
+		uncommittedEventPositions = null;
+	}
+
+	/**
+	 * Meant for repositories merging several saves into one - makes given
+	 * changes, made before the uncommitted ones, uncommitted again.
+	 */
+	public void prependUncommittedEvents(List<ReservationEvent> earlierEvents) {
+		uncommittedEvents.addAll(0, earlierEvents);
+		uncommittedEventPositions = null;
+	}
+
+	/**
+	 * 
+	 * @return events that rebuild current items and status when passed to
+	 *         {@link #restore(Id, ClientData, Date, List, Map)}
+	 */
+	public List<ReservationEvent> toEvents() {
+		List<ReservationEvent> events = new ArrayList<ReservationEvent>(items.size() + 1);
+		for (ReservationItem item : items)
+			events.add(ReservationEvent.itemAdded(item.getProduct().getId(), item.getQuantity()));
 		if (isClosed())
-			domainError("Reservation already closed");
-		if (!product.isAvailable())
-			domainError("Product is no longer available");
+			events.add(ReservationEvent.closed());
+		return events;
+	}
+
+	public void add(Product product, int quantity) {
+		tryAdd(product, quantity).orThrow();
+	}
 
-		if (contains(product)) {
-			increase(product, quantity);
+	/**
+	 * Same as {@link #add(Product, int)}, but reports rejection in the result
+	 * instead of throwing.
+	 */
+	public DomainResult<Void> tryAdd(Product product, int quantity) {
+		String rejection = checkAdd(product);
+		if (rejection != null)
+			return domainRejection(rejection);
+
+		ReservationItem item = findItem(product);
+		if (item != null) {
+			if (!item.canChangeQuantityBy(quantity))
+				return domainRejection("change below 1");
+			item.changeQuantityBy(quantity);
+			recordQuantityChange(product.getId(), quantity);
 		} else {
 			addNew(product, quantity);
 		}
+		return DomainResult.done();
+	}
+
+	private String checkAdd(Product product) {
+		if (isClosed())
+			return "Reservation already closed";
+		if (!product.isAvailable())
+			return "Product is no longer available";
+		return null;
 	}
 
 	/**
 	 * Sample function closured by policy </br> Higher order function closured
 	 * by policy function</br> </br> Function loads current prices, and prepares
-	 * offer according to the current availability and given discount
+	 * offer according to the current availability and given discount</br>
+	 * </br> Offer lines are remembered per item and reused by subsequent
+	 * calls with the same policy instance, unless the item quantity or the
+	 * product availability has changed since. A reused line gets a new
+	 * product snapshot, only its cost and discount are taken over. Policy
+	 * results are assumed to depend only on the product, quantity and regular
+	 * cost.</br>
+	 * </br> {@link BulkDiscountPolicy} is asked once for all available lines,
+	 * its results are not reused.
 	 * 
 	 * @param discountPolicy
 	 * @return
 	 */
 	public Offer calculateOffer(DiscountPolicy discountPolicy) {
+		if (discountPolicy instanceof BulkDiscountPolicy)
+			return calculateOffer((BulkDiscountPolicy) discountPolicy);
+
 		List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 		List<OfferItem> unavailableItems = new ArrayList<OfferItem>();
 
 		for (ReservationItem item : items) {
-			if (item.getProduct().isAvailable()) {
-				Discount discount = discountPolicy.applyDiscount(item
-						.getProduct(), item.getQuantity(), item.getProduct()
-						.getPrice());
-				OfferItem offerItem = new OfferItem(item.getProduct()
-						.generateSnapshot(), item.getQuantity(), discount);
+			boolean available = item.getProduct().isAvailable();
+
+			OfferItem offerItem = offerItem(item, discountPolicy, available);
 
+			if (available) {
 				availabeItems.add(offerItem);
 			} else {
-				OfferItem offerItem = new OfferItem(item.getProduct()
-						.generateSnapshot(), item.getQuantity());
-
 				unavailableItems.add(offerItem);
 			}
 		}
@@ -88,26 +207,140 @@ public class Reservation extends BaseAggregateRoot{
 		return new Offer(availabeItems, unavailableItems);
 	}
 
+	private Offer calculateOffer(BulkDiscountPolicy discountPolicy) {
+		List<ReservationItem> availableReservationItems = new ArrayList<ReservationItem>();
+		List<DiscountLine> lines = new ArrayList<DiscountLine>();
+		List<OfferItem> unavailableItems = new ArrayList<OfferItem>();
+
+		for (ReservationItem item : items) {
+			if (item.getProduct().isAvailable()) {
+				availableReservationItems.add(item);
+				lines.add(new DiscountLine(item.getProduct(), item.getQuantity(), item.getProduct().getPrice()));
+				continue;
+			}
+
+			unavailableItems.add(offerItem(item, discountPolicy, false));
+		}
+
+		List<OfferItem> availabeItems = new ArrayList<OfferItem>(lines.size());
+		if (!lines.isEmpty()) {
+			List<Discount> discounts = discountPolicy.applyDiscounts(lines);
+			if (discounts.size() != lines.size())
+				throw new IllegalStateException("Discount policy returned " + discounts.size()
+						+ " discounts for " + lines.size() + " lines");
+
+			for (int i = 0; i < lines.size(); i++) {
+				ReservationItem item = availableReservationItems.get(i);
+				availabeItems.add(new OfferItem(item.getProduct().generateSnapshot(),
+						item.getQuantity(), discounts.get(i)));
+			}
+		}
+
+		return new Offer(availabeItems, unavailableItems);
+	}
+
+	private OfferItem offerItem(ReservationItem item, DiscountPolicy discountPolicy, boolean available) {
+		OfferItem offerItem = item.getOfferItem(discountPolicy, available);
+		if (offerItem != null)
+			return offerItem.withSnapshot(item.getProduct().generateSnapshot());
+
+		offerItem = createOfferItem(item, discountPolicy, available);
+		item.setOfferItem(offerItem, discountPolicy, available);
+		return offerItem;
+	}
+
+	private OfferItem createOfferItem(ReservationItem item,
+			DiscountPolicy discountPolicy, boolean available) {
+		if (available) {
+			Discount discount = discountPolicy.applyDiscount(item
+					.getProduct(), item.getQuantity(), item.getProduct()
+					.getPrice());
+			return new OfferItem(item.getProduct().generateSnapshot(),
+					item.getQuantity(), discount);
+		}
+		return new OfferItem(item.getProduct().generateSnapshot(),
+				item.getQuantity());
+	}
+
 	private void addNew(Product product, int quantity) {
 		ReservationItem item = new ReservationItem(product, quantity);
 		items.add(item);
+		itemsByProduct().put(product.getId(), item);
+		uncommittedEventPositions().put(product.getId(), uncommittedEvents.size());
+		uncommittedEvents.add(ReservationEvent.itemAdded(product.getId(), quantity));
 	}
 
-	private void increase(Product product, int quantity) {
-		for (ReservationItem item : items) {
-			if (item.getProduct().equals(product)) {
-				item.changeQuantityBy(quantity);
-				break;
+	/**
+	 * Folds the change into the uncommitted event of the product, if any, so
+	 * that a reservation changed many times between saves keeps one event
+	 * per product.
+	 */
+	private void recordQuantityChange(Id productId, int change) {
+		Map<Id, Integer> positions = uncommittedEventPositions();
+		Integer position = positions.get(productId);
+		if (position != null) {
+			uncommittedEvents.set(position, uncommittedEvents.get(position).changedBy(change));
+		} else {
+			positions.put(productId, uncommittedEvents.size());
+			uncommittedEvents.add(ReservationEvent.quantityChanged(productId, change));
+		}
+	}
+
+	private Map<Id, Integer> uncommittedEventPositions() {
+		if (uncommittedEventPositions == null) {
+			uncommittedEventPositions = new HashMap<Id, Integer>();
+			for (int i = 0; i < uncommittedEvents.size(); i++) {
+				Id productId = uncommittedEvents.get(i).getProductId();
+				if (productId != null)
+					uncommittedEventPositions.put(productId, i);
 			}
 		}
+		return uncommittedEventPositions;
+	}
+
+	private void replay(ReservationEvent event, Map<Id, Product> products) {
+		switch (event.getType()) {
+		case ITEM_ADDED:
+			ReservationItem item = new ReservationItem(productOf(event, products), event.getQuantity());
+			items.add(item);
+			if (!itemsByProduct().containsKey(event.getProductId()))
+				itemsByProduct().put(event.getProductId(), item);
+			break;
+		case QUANTITY_CHANGED:
+			ReservationItem changed = itemsByProduct().get(event.getProductId());
+			if (changed == null)
+				throw new IllegalStateException("No item of product " + event.getProductId() + " in reservation " + id);
+			changed.changeQuantityBy(event.getQuantity());
+			break;
+		case CLOSED:
+			status = ReservationStatus.CLOSED;
+			break;
+		}
+	}
+
+	private Product productOf(ReservationEvent event, Map<Id, Product> products) {
+		Product product = products.get(event.getProductId());
+		if (product == null)
+			throw new IllegalStateException("Product " + event.getProductId() + " of reservation " + id + " not found");
+		return product;
 	}
 
 	public boolean contains(Product product) {
-		for (ReservationItem item : items) {
-			if (item.getProduct().equals(product))
-				return true;
+		return findItem(product) != null;
+	}
+
+	private ReservationItem findItem(Product product) {
+		return itemsByProduct().get(product.getId());
+	}
+
+	private Map<Id, ReservationItem> itemsByProduct() {
+		if (itemsByProduct == null) {
+			itemsByProduct = new HashMap<Id, ReservationItem>();
+			for (ReservationItem item : items)
+				if (!itemsByProduct.containsKey(item.getProduct().getId()))
+					itemsByProduct.put(item.getProduct().getId(), item);
 		}
-		return false;
+		return itemsByProduct;
 	}
 
 	public boolean isClosed() {
@@ -118,6 +351,7 @@ public class Reservation extends BaseAggregateRoot{
 		if (isClosed())
 			domainError("Reservation is already closed");
 		status = ReservationStatus.CLOSED;
+		uncommittedEvents.add(ReservationEvent.closed());
 	}
 
 	public List<ReservedProduct> getReservedProducts() {
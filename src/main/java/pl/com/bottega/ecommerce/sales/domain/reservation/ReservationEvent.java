@@ -0,0 +1,99 @@
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Change of a {@link Reservation}. Replaying events of a reservation in order
+ * rebuilds its items and status.
+ */
+public class ReservationEvent {
+	public enum Type {
+		ITEM_ADDED, QUANTITY_CHANGED, CLOSED
+	}
+
+	private static final ReservationEvent CLOSED = new ReservationEvent(Type.CLOSED, null, 0);
+
+	private final Type type;
+
+	private final Id productId;
+
+	private final int quantity;
+
+	private ReservationEvent(Type type, Id productId, int quantity) {
+		this.type = type;
+		this.productId = productId;
+		this.quantity = quantity;
+	}
+
+	public static ReservationEvent itemAdded(Id productId, int quantity) {
+		return new ReservationEvent(Type.ITEM_ADDED, productId, quantity);
+	}
+
+	public static ReservationEvent quantityChanged(Id productId, int change) {
+		return new ReservationEvent(Type.QUANTITY_CHANGED, productId, change);
+	}
+
+	public static ReservationEvent closed() {
+		return CLOSED;
+	}
+
+	/**
+	 * Same event with quantity changed by change, replays as this event
+	 * followed by a change of quantity.
+	 */
+	ReservationEvent changedBy(int change) {
+		return new ReservationEvent(type, productId, quantity + change);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * 
+	 * @return null for {@link Type#CLOSED}
+	 */
+	public Id getProductId() {
+		return productId;
+	}
+
+	/**
+	 * 
+	 * @return quantity of added item or change of quantity
+	 */
+	public int getQuantity() {
+		return quantity;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((productId == null) ? 0 : productId.hashCode());
+		result = prime * result + quantity;
+		result = prime * result + type.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ReservationEvent other = (ReservationEvent) obj;
+		if (productId == null) {
+			if (other.productId != null)
+				return false;
+		} else if (!productId.equals(other.productId))
+			return false;
+		return quantity == other.quantity && type == other.type;
+	}
+
+	@Override
+	public String toString() {
+		return type + (productId == null ? "" : " " + productId + " " + quantity);
+	}
+}
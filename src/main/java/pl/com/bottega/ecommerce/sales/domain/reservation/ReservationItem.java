@@ -1,6 +1,8 @@
 package pl.com.bottega.ecommerce.sales.domain.reservation;
 
 import pl.com.bottega.ddd.support.domain.BaseEntity;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountPolicy;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferItem;
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
 import pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationException.DomainOperationException;
 
@@ -9,6 +11,16 @@ public class ReservationItem extends BaseEntity{
 	
 	private int quantity;
 
+	/**
+	 * Offer line last calculated for this item, valid as long as quantity,
+	 * product availability and discount policy stay the same.
+	 */
+	private transient OfferItem offerItem;
+
+	private transient DiscountPolicy offerDiscountPolicy;
+
+	private transient boolean offerAvailability;
+
 	@SuppressWarnings("unused")
 	private ReservationItem(){}
 	
@@ -18,10 +30,30 @@ public class ReservationItem extends BaseEntity{
 	}
 
 	void changeQuantityBy(int change) {
-		int changed = quantity + change;
-		if (changed <= 0)
+		if (!canChangeQuantityBy(change))
 			throw new DomainOperationException(null, "change below 1");
-		this.quantity = changed;
+		this.quantity += change;
+		this.offerItem = null;
+	}
+
+	boolean canChangeQuantityBy(int change) {
+		return quantity + change > 0;
+	}
+
+	/**
+	 * 
+	 * @return previously calculated offer line or null if it is out of date
+	 */
+	OfferItem getOfferItem(DiscountPolicy discountPolicy, boolean available) {
+		if (offerItem != null && offerDiscountPolicy == discountPolicy && offerAvailability == available)
+			return offerItem;
+		return null;
+	}
+
+	void setOfferItem(OfferItem offerItem, DiscountPolicy discountPolicy, boolean available) {
+		this.offerItem = offerItem;
+		this.offerDiscountPolicy = discountPolicy;
+		this.offerAvailability = available;
 	}
 	
 	public Product getProduct() {
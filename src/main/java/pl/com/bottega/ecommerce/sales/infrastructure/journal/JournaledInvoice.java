@@ -0,0 +1,83 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.journal;
+
+import java.nio.ByteBuffer;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.Invoice;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.InvoiceCodec;
+import pl.com.bottega.ecommerce.sharedkernel.BinaryFormat;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Invoice stored in a {@link MappedInvoiceJournal}, read in place from the
+ * mapped file. Values are decoded on every call, nothing is copied until asked
+ * for.
+ */
+public class JournaledInvoice {
+
+	private final ByteBuffer record;
+
+	JournaledInvoice(ByteBuffer record) {
+		this.record = record;
+	}
+
+	public Id getId() {
+		ByteBuffer buffer = record.duplicate();
+		BinaryFormat.checkVersion(buffer);
+		return BinaryFormat.getId(buffer);
+	}
+
+	public Money getNet() {
+		return BinaryFormat.getMoney(atTotals());
+	}
+
+	public Money getGros() {
+		ByteBuffer buffer = atTotals();
+		BinaryFormat.getMoney(buffer);
+		return BinaryFormat.getMoney(buffer);
+	}
+
+	public Money getTax() {
+		ByteBuffer buffer = atTotals();
+		Money net = BinaryFormat.getMoney(buffer);
+		return BinaryFormat.getMoney(buffer).subtract(net);
+	}
+
+	/**
+	 * 
+	 * @return read only view of the record, as written by
+	 *         {@link InvoiceCodec#encodeWithTotals(Invoice, java.nio.ByteBuffer)}
+	 */
+	public ByteBuffer getRecord() {
+		return record.duplicate();
+	}
+
+	/**
+	 * Decodes the whole invoice with its lines.
+	 */
+	public Invoice toInvoice() {
+		return InvoiceCodec.decodeWithTotals(record.duplicate());
+	}
+
+	private ByteBuffer atTotals() {
+		ByteBuffer buffer = record.duplicate();
+		BinaryFormat.checkVersion(buffer);
+		BinaryFormat.getId(buffer);
+		return buffer;
+	}
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.Invoice;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.InvoiceCodec;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.InvoiceJournal;
+
+/**
+ * {@link InvoiceJournal} appending invoices to memory mapped segment files in
+ * a directory. Thread safe.<br>
+ * Every record holds its length, CRC and the invoice written by
+ * {@link InvoiceCodec#encodeWithTotals(Invoice, ByteBuffer)}. A segment is
+ * filled up to segmentSize bytes, then the next one is started.<br>
+ * Appends are committed in groups: an append returns once its record is
+ * forced to the disk, and one force covers all records appended meanwhile by
+ * other threads.<br>
+ * Invoices are indexed by id in memory and read in place from the mapped
+ * files. Opening the journal rebuilds the index, stopping at the first torn or
+ * corrupted record of the last segment.
+ */
+public class MappedInvoiceJournal implements InvoiceJournal, Closeable {
+
+	private static final int MAGIC = 0x494e564a;
+
+	private static final int FORMAT = 1;
+
+	private static final int SEGMENT_HEADER_SIZE = 8;
+
+	/**
+	 * Length and CRC of the payload
+	 */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	/**
+	 * Zero length written after the last record
+	 */
+	private static final int TERMINATOR_SIZE = 4;
+
+	private static final String SEGMENT_PREFIX = "invoices-";
+
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+
+	private final ConcurrentMap<Id, Location> index = new ConcurrentHashMap<Id, Location>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition syncDone = lock.newCondition();
+
+	/**
+	 * Bytes of records appended since the journal was opened
+	 */
+	private long written;
+
+	/**
+	 * Bytes of records forced to the disk since the journal was opened
+	 */
+	private long durable;
+
+	private boolean syncing;
+
+	/**
+	 * Index of the first segment with records not forced to the disk
+	 */
+	private int firstUnsynced;
+
+	private boolean closed;
+
+	private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(4096);
+		}
+	};
+
+	public MappedInvoiceJournal(Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @throws IOException
+	 *             if directory cannot be read or holds files that are not
+	 *             journal segments under segment names
+	 */
+	public MappedInvoiceJournal(Path directory, int segmentSize) throws IOException {
+		if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + TERMINATOR_SIZE)
+			throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		try {
+			for (Path file : segmentFiles())
+				segments.add(recover(file));
+			if (segments.isEmpty())
+				segments.add(createSegment(0));
+		} catch (IOException | RuntimeException e) {
+			closeSegments();
+			throw e;
+		}
+		firstUnsynced = segments.size() - 1;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the invoice does not fit a segment
+	 */
+	@Override
+	public void append(Invoice invoice) {
+		ByteBuffer payload = encode(invoice);
+		long end;
+		lock.lock();
+		try {
+			ensureOpen();
+			index.put(invoice.getId(), write(payload, invoice.getId()));
+			end = written;
+		} finally {
+			lock.unlock();
+		}
+		awaitDurable(end);
+	}
+
+	/**
+	 * 
+	 * @return newest journaled invoice with given id, null if there is none
+	 */
+	public JournaledInvoice read(Id invoiceId) {
+		Location location = index.get(invoiceId);
+		return location == null ? null : new JournaledInvoice(location.record());
+	}
+
+	/**
+	 * Passes all invoices journaled so far, in order of appending.
+	 */
+	public void forEach(Consumer<? super JournaledInvoice> consumer) {
+		List<Segment> segmentsToRead;
+		int lastEnd;
+		lock.lock();
+		try {
+			ensureOpen();
+			segmentsToRead = new ArrayList<Segment>(segments);
+			lastEnd = segmentsToRead.get(segmentsToRead.size() - 1).position;
+		} finally {
+			lock.unlock();
+		}
+
+		for (int i = 0; i < segmentsToRead.size(); i++) {
+			Segment segment = segmentsToRead.get(i);
+			int end = i == segmentsToRead.size() - 1 ? lastEnd : segment.position;
+			for (int at = SEGMENT_HEADER_SIZE; at < end; at += RECORD_HEADER_SIZE + segment.buffer.getInt(at))
+				consumer.accept(new JournaledInvoice(segment.record(at)));
+		}
+	}
+
+	/**
+	 * 
+	 * @return number of distinct invoice ids journaled
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			for (Segment segment : segments)
+				segment.buffer.force();
+			closeSegments();
+			syncDone.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private ByteBuffer encode(Invoice invoice) {
+		ByteBuffer buffer = scratch.get();
+		while (true) {
+			buffer.clear();
+			try {
+				InvoiceCodec.encodeWithTotals(invoice, buffer);
+				buffer.flip();
+				return buffer;
+			} catch (BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+				scratch.set(buffer);
+			}
+		}
+	}
+
+	private Location write(ByteBuffer payload, Id invoiceId) {
+		int length = payload.remaining();
+		int needed = RECORD_HEADER_SIZE + length + TERMINATOR_SIZE;
+		if (needed > segmentSize - SEGMENT_HEADER_SIZE)
+			throw new IllegalArgumentException("Invoice " + invoiceId + " does not fit a journal segment");
+
+		Segment segment = segments.get(segments.size() - 1);
+		if (segment.position + needed > segment.buffer.capacity()) {
+			segment = createSegment(segment.number + 1);
+			segments.add(segment);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+
+		int at = segment.position;
+		ByteBuffer target = segment.buffer.duplicate();
+		target.position(at + RECORD_HEADER_SIZE);
+		target.put(payload);
+		segment.buffer.putInt(at + RECORD_HEADER_SIZE + length, 0);
+		segment.buffer.putInt(at + 4, (int) crc.getValue());
+		segment.buffer.putInt(at, length);
+
+		segment.position = at + RECORD_HEADER_SIZE + length;
+		written += RECORD_HEADER_SIZE + length;
+		return new Location(segment, at);
+	}
+
+	/**
+	 * Group commit: the first waiting thread forces everything appended so
+	 * far, the others wait for it.
+	 */
+	private void awaitDurable(long end) {
+		lock.lock();
+		try {
+			// closing forces all segments
+			while (durable < end && !closed) {
+				if (syncing) {
+					syncDone.awaitUninterruptibly();
+					continue;
+				}
+
+				syncing = true;
+				long target = written;
+				int from = firstUnsynced;
+				List<Segment> toSync = segments.subList(from, segments.size());
+				Segment[] unsynced = toSync.toArray(new Segment[toSync.size()]);
+				boolean synced = false;
+				lock.unlock();
+				try {
+					for (Segment segment : unsynced)
+						segment.buffer.force();
+					synced = true;
+				} finally {
+					lock.lock();
+					syncing = false;
+					if (synced) {
+						durable = Math.max(durable, target);
+						firstUnsynced = from + unsynced.length - 1;
+					}
+					syncDone.signalAll();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream)
+				files.add(file);
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private Segment recover(Path file) throws IOException {
+		String name = file.getFileName().toString();
+		int number;
+		try {
+			number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			throw new IOException(file + " is not a journal segment");
+		}
+
+		Segment segment = new Segment(number, FileChannel.open(file, StandardOpenOption.READ,
+				StandardOpenOption.WRITE), 0);
+		if (segment.buffer.capacity() < SEGMENT_HEADER_SIZE || segment.buffer.getInt(0) != MAGIC
+				|| segment.buffer.getInt(4) != FORMAT) {
+			segment.channel.close();
+			throw new IOException(file + " is not a journal segment");
+		}
+
+		CRC32 crc = new CRC32();
+		int at = SEGMENT_HEADER_SIZE;
+		while (at + RECORD_HEADER_SIZE <= segment.buffer.capacity()) {
+			int length = segment.buffer.getInt(at);
+			if (length <= 0 || length > segment.buffer.capacity() - at - RECORD_HEADER_SIZE)
+				break;
+			ByteBuffer record = segment.record(at);
+			crc.reset();
+			crc.update(record.duplicate());
+			if ((int) crc.getValue() != segment.buffer.getInt(at + 4))
+				break;
+
+			index.put(new JournaledInvoice(record).getId(), new Location(segment, at));
+			at += RECORD_HEADER_SIZE + length;
+		}
+
+		segment.position = at;
+		if (at + TERMINATOR_SIZE <= segment.buffer.capacity())
+			segment.buffer.putInt(at, 0);
+		return segment;
+	}
+
+	private Segment createSegment(int number) {
+		Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+		try {
+			Segment segment = new Segment(number, FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.READ, StandardOpenOption.WRITE), segmentSize);
+			segment.buffer.putInt(0, MAGIC);
+			segment.buffer.putInt(4, FORMAT);
+			segment.buffer.putInt(SEGMENT_HEADER_SIZE, 0);
+			segment.position = SEGMENT_HEADER_SIZE;
+			return segment;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void closeSegments() {
+		for (Segment segment : segments) {
+			try {
+				segment.channel.close();
+			} catch (IOException e) {
+				// mapping stays valid, nothing more to release
+			}
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed)
+			throw new IllegalStateException("Journal closed");
+	}
+
+	private static class Segment {
+
+		private final int number;
+
+		private final FileChannel channel;
+
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * End of the last record, guarded by the journal lock
+		 */
+		private int position;
+
+		/**
+		 * 
+		 * @param size
+		 *            bytes to map, 0 for the current size of the file
+		 */
+		Segment(int number, FileChannel channel, int size) throws IOException {
+			this.number = number;
+			this.channel = channel;
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size == 0 ? channel.size() : size);
+		}
+
+		/**
+		 * 
+		 * @return read only view of the payload of record at given position
+		 */
+		ByteBuffer record(int at) {
+			ByteBuffer record = buffer.asReadOnlyBuffer();
+			record.position(at + RECORD_HEADER_SIZE);
+			record.limit(at + RECORD_HEADER_SIZE + buffer.getInt(at));
+			return record.slice();
+		}
+	}
+
+	private static class Location {
+
+		private final Segment segment;
+
+		private final int position;
+
+		Location(Segment segment, int position) {
+			this.segment = segment;
+			this.position = position;
+		}
+
+		ByteBuffer record() {
+			return segment.record(position);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Calendar of best before dates: ids of products are kept in one bucket per
+ * day. Placing, moving and removing a product takes constant time, a range
+ * query visits only the days in range (or only the non empty days, if there
+ * are fewer of them) and the products found. Thread safe.
+ */
+class BestBeforeIndex {
+
+	private final Clock clock;
+
+	private final Map<Long, Set<Id>> buckets = new HashMap<Long, Set<Id>>();
+
+	private final Map<Id, Long> dayOf = new HashMap<Id, Long>();
+
+	BestBeforeIndex(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Places product in the bucket of its date, moving it if it was placed
+	 * before. Null date removes it.
+	 */
+	synchronized void put(Id productId, Date bestBefore) {
+		if (bestBefore == null) {
+			remove(productId);
+			return;
+		}
+
+		long day = epochDay(bestBefore);
+		Long previousDay = dayOf.put(productId, day);
+		if (previousDay != null) {
+			if (previousDay == day)
+				return;
+			removeFromBucket(previousDay, productId);
+		}
+
+		Set<Id> bucket = buckets.get(day);
+		if (bucket == null) {
+			bucket = new LinkedHashSet<Id>();
+			buckets.put(day, bucket);
+		}
+		bucket.add(productId);
+	}
+
+	synchronized void remove(Id productId) {
+		Long day = dayOf.remove(productId);
+		if (day != null)
+			removeFromBucket(day, productId);
+	}
+
+	/**
+	 * 
+	 * @return ids of products whose best before date falls between today and
+	 *         given number of days from today, inclusive, earliest first
+	 */
+	synchronized List<Id> expiringWithin(int days) {
+		List<Id> result = new ArrayList<Id>();
+		if (days < 0)
+			return result;
+
+		long today = clock.instant().atZone(clock.getZone()).toLocalDate().toEpochDay();
+		long last = today + days;
+		if (days < buckets.size()) {
+			for (long day = today; day <= last; day++) {
+				Set<Id> bucket = buckets.get(day);
+				if (bucket != null)
+					result.addAll(bucket);
+			}
+			return result;
+		}
+
+		List<Long> daysInRange = new ArrayList<Long>();
+		for (Long day : buckets.keySet()) {
+			if (day >= today && day <= last)
+				daysInRange.add(day);
+		}
+		Collections.sort(daysInRange);
+		for (Long day : daysInRange)
+			result.addAll(buckets.get(day));
+		return result;
+	}
+
+	private void removeFromBucket(long day, Id productId) {
+		Set<Id> bucket = buckets.get(day);
+		bucket.remove(productId);
+		if (bucket.isEmpty())
+			buckets.remove(day);
+	}
+
+	private long epochDay(Date date) {
+		return Instant.ofEpochMilli(date.getTime()).atZone(clock.getZone()).toLocalDate().toEpochDay();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.client.Client;
+import pl.com.bottega.ecommerce.sales.domain.client.ClientRepository;
+
+/**
+ * Keeps loaded clients and their snapshots for a short time, so that
+ * commands of one session do not load the same client over and over.
+ * Thread safe. Every load returns a private copy of the cached client.
+ * Saving a client drops its cached copy, a load that started before is not
+ * cached.
+ */
+public class CachingClientRepository implements ClientRepository {
+
+	private static final int MINIMUM_SWEEP_SIZE = 64;
+
+	private final ClientRepository delegate;
+
+	private final long ttlNanos;
+
+	private final ConcurrentMap<Id, Entry> entries = new ConcurrentHashMap<Id, Entry>();
+
+	/**
+	 * Counts invalidations, loads started before one are not cached.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final BiFunction<Id, Entry, Entry> invalidation = new BiFunction<Id, Entry, Entry>() {
+		@Override
+		public Entry apply(Id id, Entry entry) {
+			invalidations.incrementAndGet();
+			return null;
+		}
+	};
+
+	/**
+	 * Size at which expired entries are swept out
+	 */
+	private volatile int sweepSize = MINIMUM_SWEEP_SIZE;
+
+	public CachingClientRepository(ClientRepository delegate, long ttl, TimeUnit unit) {
+		if (ttl <= 0)
+			throw new IllegalArgumentException("Time to live has to be positive");
+		this.delegate = delegate;
+		this.ttlNanos = unit.toNanos(ttl);
+	}
+
+	@Override
+	public Client load(Id id) {
+		return entry(id).client.copy();
+	}
+
+	/**
+	 * 
+	 * @return snapshot of the client, shared while the client stays cached
+	 */
+	public ClientData loadClientData(Id id) {
+		return entry(id).clientData;
+	}
+
+	@Override
+	public void save(Client client) {
+		try {
+			delegate.save(client);
+		} finally {
+			invalidate(client.getId());
+		}
+	}
+
+	/**
+	 * Counted within the entry's compute, so a load admitted for the same id
+	 * either precedes it and is dropped, or sees the new count.
+	 */
+	public void invalidate(Id id) {
+		entries.compute(id, invalidation);
+	}
+
+	public void invalidateAll() {
+		invalidations.incrementAndGet();
+		entries.clear();
+	}
+
+	private Entry entry(Id id) {
+		long now = System.nanoTime();
+		Entry entry = entries.get(id);
+		if (entry != null && !entry.isExpired(now))
+			return entry;
+
+		long invalidationsBefore = invalidations.get();
+		Client client = delegate.load(id);
+		entry = new Entry(client, client.generateSnapshot(), now + ttlNanos);
+		entries.compute(id, new Admission(entry, invalidationsBefore));
+		if (entries.size() >= sweepSize)
+			sweep(now);
+		return entry;
+	}
+
+	private void sweep(long now) {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			if (it.next().isExpired(now))
+				it.remove();
+		}
+		sweepSize = Math.max(MINIMUM_SWEEP_SIZE, entries.size() * 2);
+	}
+
+	/**
+	 * Caches loaded entry unless the client was invalidated since its load
+	 * started.
+	 */
+	private class Admission implements BiFunction<Id, Entry, Entry> {
+
+		private final Entry loaded;
+
+		private final long invalidationsBefore;
+
+		Admission(Entry loaded, long invalidationsBefore) {
+			this.loaded = loaded;
+			this.invalidationsBefore = invalidationsBefore;
+		}
+
+		@Override
+		public Entry apply(Id id, Entry current) {
+			return invalidations.get() == invalidationsBefore ? loaded : current;
+		}
+	}
+
+	private static class Entry {
+
+		private final Client client;
+
+		private final ClientData clientData;
+
+		private final long expiresAt;
+
+		Entry(Client client, ClientData clientData, long expiresAt) {
+			this.client = client;
+			this.clientData = clientData;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductRepository;
+
+/**
+ * Size bounded cache in front of a {@link ProductRepository}. Thread safe.<br>
+ * Eviction is frequency aware: when full, a few entries are sampled in clock
+ * order, the least frequently used one is evicted and the frequencies of the
+ * sampled ones are halved, so that popularity fades over time.<br>
+ * Concurrent loads of the same missing product, single or batched, are
+ * served by a single call to the underlying repository. Every load returns a
+ * private copy of the cached product. Archived products are not kept - an
+ * entry whose product has been marked as removed is dropped on access.
+ * Saving a product through this repository drops its cached copy, products
+ * changed elsewhere have to be {@link #invalidate(Id) invalidated}.
+ */
+public class CachingProductRepository implements ProductRepository {
+
+	private static final int EVICTION_SAMPLE = 8;
+
+	private final ProductRepository delegate;
+
+	private final int maximumSize;
+
+	private final ConcurrentMap<Id, Entry> entries = new ConcurrentHashMap<Id, Entry>();
+
+	private final ConcurrentMap<Id, CompletableFuture<Product>> loading = new ConcurrentHashMap<Id, CompletableFuture<Product>>();
+
+	/**
+	 * Counts invalidations, loads started before one are not cached.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final Object evictionLock = new Object();
+
+	private Iterator<Map.Entry<Id, Entry>> evictionCursor;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder loads = new LongAdder();
+
+	private final LongAdder loadNanos = new LongAdder();
+
+	public CachingProductRepository(ProductRepository delegate, int maximumSize) {
+		if (maximumSize < 1)
+			throw new IllegalArgumentException("Maximum size has to be positive");
+		this.delegate = delegate;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Saves product in the underlying repository and drops its cached copy.
+	 */
+	@Override
+	public void save(Product product) {
+		try {
+			delegate.save(product);
+		} finally {
+			invalidate(product.getId());
+		}
+	}
+
+	@Override
+	public Product load(Id productId) {
+		Product cached = cached(productId);
+		if (cached != null) {
+			hits.increment();
+			return cached.copy();
+		}
+		misses.increment();
+
+		CompletableFuture<Product> load = new CompletableFuture<Product>();
+		CompletableFuture<Product> running = loading.putIfAbsent(productId, load);
+		if (running != null)
+			return copyOf(await(running));
+
+		try {
+			long invalidationsBefore = invalidations.get();
+			Product product = timedLoad(productId);
+			if (invalidations.get() == invalidationsBefore)
+				admit(productId, product);
+			load.complete(product);
+			return copyOf(product);
+		} catch (RuntimeException e) {
+			load.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(productId, load);
+		}
+	}
+
+	/**
+	 * Missing products that nobody is loading yet are loaded with one call to
+	 * the underlying repository, the ones being loaded by other callers are
+	 * awaited afterwards.
+	 */
+	@Override
+	public Map<Id, Product> loadAll(Collection<Id> productIds) {
+		Map<Id, Product> result = new LinkedHashMap<Id, Product>(productIds.size() * 2);
+		Map<Id, CompletableFuture<Product>> owned = new LinkedHashMap<Id, CompletableFuture<Product>>();
+		Map<Id, CompletableFuture<Product>> running = new LinkedHashMap<Id, CompletableFuture<Product>>();
+		for (Id productId : productIds) {
+			Product cached = cached(productId);
+			result.put(productId, copyOf(cached));
+			if (cached != null) {
+				hits.increment();
+				continue;
+			}
+			misses.increment();
+			if (owned.containsKey(productId) || running.containsKey(productId))
+				continue;
+
+			CompletableFuture<Product> load = new CompletableFuture<Product>();
+			CompletableFuture<Product> other = loading.putIfAbsent(productId, load);
+			if (other != null)
+				running.put(productId, other);
+			else
+				owned.put(productId, load);
+		}
+
+		if (!owned.isEmpty())
+			loadOwned(owned, result);
+		for (Map.Entry<Id, CompletableFuture<Product>> load : running.entrySet())
+			result.put(load.getKey(), copyOf(await(load.getValue())));
+
+		result.values().removeAll(Collections.singleton(null));
+		return result;
+	}
+
+	@Override
+	public List<Product> findProductWhereBestBeforeExpiredIn(int days) {
+		return delegate.findProductWhereBestBeforeExpiredIn(days);
+	}
+
+	/**
+	 * Drops cached product, to be called when it has changed.
+	 */
+	public void invalidate(Id productId) {
+		invalidations.incrementAndGet();
+		entries.remove(productId);
+		loading.remove(productId);
+	}
+
+	public void invalidateAll() {
+		invalidations.incrementAndGet();
+		entries.clear();
+		loading.clear();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long requests = hitCount + misses.sum();
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	/**
+	 * 
+	 * @return number of calls to the underlying repository
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	public double getAverageLoadNanos() {
+		long loadCount = loads.sum();
+		return loadCount == 0 ? 0 : (double) loadNanos.sum() / loadCount;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private Product cached(Id productId) {
+		Entry entry = entries.get(productId);
+		if (entry == null)
+			return null;
+		if (entry.product.isRemoved()) {
+			entries.remove(productId, entry);
+			return null;
+		}
+		entry.frequency++;
+		return entry.product;
+	}
+
+	private Product timedLoad(Id productId) {
+		long start = System.nanoTime();
+		try {
+			return delegate.load(productId);
+		} finally {
+			loads.increment();
+			loadNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Completes the owned loads, also when the underlying repository fails.
+	 */
+	private void loadOwned(Map<Id, CompletableFuture<Product>> owned, Map<Id, Product> result) {
+		try {
+			long invalidationsBefore = invalidations.get();
+			Map<Id, Product> loaded = timedLoadAll(new ArrayList<Id>(owned.keySet()));
+			boolean admit = invalidations.get() == invalidationsBefore;
+			for (Map.Entry<Id, CompletableFuture<Product>> load : owned.entrySet()) {
+				Product product = loaded.get(load.getKey());
+				if (admit)
+					admit(load.getKey(), product);
+				load.getValue().complete(product);
+				result.put(load.getKey(), copyOf(product));
+			}
+		} catch (RuntimeException e) {
+			for (CompletableFuture<Product> load : owned.values())
+				load.completeExceptionally(e);
+			throw e;
+		} finally {
+			for (Map.Entry<Id, CompletableFuture<Product>> load : owned.entrySet())
+				loading.remove(load.getKey(), load.getValue());
+		}
+	}
+
+	private Map<Id, Product> timedLoadAll(List<Id> productIds) {
+		long start = System.nanoTime();
+		try {
+			return delegate.loadAll(productIds);
+		} finally {
+			loads.increment();
+			loadNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	private static Product copyOf(Product product) {
+		return product == null ? null : product.copy();
+	}
+
+	private Product await(CompletableFuture<Product> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	private void admit(Id productId, Product product) {
+		if (product == null || product.isRemoved())
+			return;
+		entries.put(productId, new Entry(product));
+		if (entries.size() > maximumSize)
+			evict();
+	}
+
+	private void evict() {
+		synchronized (evictionLock) {
+			while (entries.size() > maximumSize) {
+				Map.Entry<Id, Entry> victim = null;
+				int victimFrequency = Integer.MAX_VALUE;
+				for (int i = 0; i < EVICTION_SAMPLE; i++) {
+					if (evictionCursor == null || !evictionCursor.hasNext())
+						evictionCursor = entries.entrySet().iterator();
+					if (!evictionCursor.hasNext())
+						return;
+
+					Map.Entry<Id, Entry> candidate = evictionCursor.next();
+					// compared before aging, so that earlier candidates are not favoured
+					int frequency = candidate.getValue().frequency;
+					if (victim == null || frequency < victimFrequency) {
+						victim = candidate;
+						victimFrequency = frequency;
+					}
+					candidate.getValue().frequency = frequency >>> 1;
+				}
+				entries.remove(victim.getKey(), victim.getValue());
+			}
+		}
+	}
+
+	private static class Entry {
+
+		private final Product product;
+
+		/**
+		 * Approximate, updated without synchronization
+		 */
+		private volatile int frequency = 1;
+
+		Entry(Product product) {
+			this.product = product;
+		}
+	}
+}
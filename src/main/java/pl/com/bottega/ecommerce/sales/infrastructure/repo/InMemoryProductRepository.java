@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductRepository;
+
+/**
+ * Reference {@link ProductRepository} keeping products in memory. Thread safe.<br>
+ * Best before dates are indexed by day, so looking for expiring products does
+ * not scan the catalog.
+ */
+public class InMemoryProductRepository implements ProductRepository {
+
+	private final ConcurrentMap<Id, Product> products = new ConcurrentHashMap<Id, Product>();
+
+	private final BestBeforeIndex bestBeforeIndex;
+
+	public InMemoryProductRepository() {
+		this(Clock.systemDefaultZone());
+	}
+
+	/**
+	 * 
+	 * @param clock
+	 *            defines today and time zone of best before dates
+	 */
+	public InMemoryProductRepository(Clock clock) {
+		this.bestBeforeIndex = new BestBeforeIndex(clock);
+	}
+
+	@Override
+	public void save(Product product) {
+		synchronized (bestBeforeIndex) {
+			products.put(product.getId(), product);
+			bestBeforeIndex.put(product.getId(), product.isRemoved() ? null : product.getBestBefore());
+		}
+	}
+
+	@Override
+	public Product load(Id productId) {
+		return products.get(productId);
+	}
+
+	@Override
+	public Map<Id, Product> loadAll(Collection<Id> productIds) {
+		Map<Id, Product> result = new LinkedHashMap<Id, Product>(productIds.size() * 2);
+		for (Id productId : productIds) {
+			Product product = products.get(productId);
+			if (product != null)
+				result.put(productId, product);
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @return available products whose best before date falls between today
+	 *         and given number of days from today, earliest first
+	 */
+	@Override
+	public List<Product> findProductWhereBestBeforeExpiredIn(int days) {
+		List<Id> expiring = bestBeforeIndex.expiringWithin(days);
+		List<Product> result = new ArrayList<Product>(expiring.size());
+		for (Id productId : expiring) {
+			Product product = products.get(productId);
+			if (product == null)
+				continue;
+			if (product.isRemoved())
+				dropArchived(productId);
+			else
+				result.add(product);
+		}
+		return result;
+	}
+
+	/**
+	 * Checked again under the monitor of save, a product saved meanwhile keeps
+	 * its entry.
+	 */
+	private void dropArchived(Id productId) {
+		synchronized (bestBeforeIndex) {
+			Product product = products.get(productId);
+			if (product != null && product.isRemoved())
+				bestBeforeIndex.remove(productId);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationRepository;
+
+/**
+ * Thread safe {@link ReservationRepository} keeping reservations in memory.<br>
+ * Every load returns a private copy, so callers never share an instance.
+ * Saves are optimistic: the saved reservation has to be based on the current
+ * version, which is then swapped with a compare-and-set on the single entry,
+ * so saves of different reservations do not contend.
+ */
+public class InMemoryReservationRepository implements ReservationRepository {
+
+	private final ConcurrentMap<Id, Reservation> reservations = new ConcurrentHashMap<Id, Reservation>();
+
+	/**
+	 * @throws OptimisticLockException
+	 *             if reservation is not based on the current version
+	 */
+	@Override
+	public void save(Reservation reservation) {
+		Id id = reservation.getId();
+		Reservation current = reservations.get(id);
+		long currentVersion = current == null ? 0 : current.getVersion();
+		if (reservation.getVersion() != currentVersion)
+			throw new OptimisticLockException(id, reservation.getVersion(), currentVersion);
+
+		Reservation stored = reservation.copy();
+		stored.markEventsCommitted();
+		stored.setVersion(currentVersion + 1);
+
+		boolean swapped = current == null ? reservations.putIfAbsent(id, stored) == null
+				: reservations.replace(id, current, stored);
+		if (!swapped)
+			throw new OptimisticLockException(id, reservation.getVersion(), reservations.get(id).getVersion());
+
+		reservation.setVersion(stored.getVersion());
+		reservation.markEventsCommitted();
+	}
+
+	@Override
+	public Reservation load(Id reservationId) {
+		Reservation stored = reservations.get(reservationId);
+		return stored == null ? null : stored.copy();
+	}
+}
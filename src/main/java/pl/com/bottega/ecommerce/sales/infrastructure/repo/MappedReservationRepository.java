@@ -0,0 +1,426 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductRepository;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationEvent;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationRepository;
+import pl.com.bottega.ecommerce.sharedkernel.BinaryFormat;
+
+/**
+ * Event sourced {@link ReservationRepository} keeping an append-only log in a
+ * memory mapped file. Thread safe.<br>
+ * Saving appends only the uncommitted events of a reservation. The first save
+ * of a reservation, a change of its removed status and every save bringing
+ * more than snapshotInterval events since the last snapshot append a
+ * snapshot instead, so loading replays at most snapshotInterval events on top
+ * of the latest snapshot. Products are looked up with one
+ * {@link ProductRepository#loadAll(java.util.Collection)} call per load.<br>
+ * Saved reservations have to be loaded from this repository (or new), since
+ * only their uncommitted events are stored. Saves are optimistic, as in
+ * {@link InMemoryReservationRepository}.<br>
+ * Opening the file replays the log index, stopping at the first torn or
+ * corrupted record. Written records survive a crash of the process; use
+ * {@link #flush()} to force them to the disk. The log is never compacted and
+ * is limited to 2GB.
+ */
+public class MappedReservationRepository implements ReservationRepository, Closeable {
+
+	private static final int MAGIC = 0x52535631;
+
+	private static final int FORMAT = 1;
+
+	private static final int FILE_HEADER_SIZE = 8;
+
+	/**
+	 * Length and CRC of the payload
+	 */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	/**
+	 * Zero length written after the last record
+	 */
+	private static final int TERMINATOR_SIZE = 4;
+
+	private static final byte SNAPSHOT = 1;
+
+	private static final byte EVENTS = 2;
+
+	private static final int DEFAULT_MAPPED_SIZE = 1 << 20;
+
+	private static final ReservationEvent.Type[] EVENT_TYPES = ReservationEvent.Type.values();
+
+	private final FileChannel channel;
+
+	private final ProductRepository productRepository;
+
+	private final int snapshotInterval;
+
+	private final Map<Id, Stream> streams = new HashMap<Id, Stream>();
+
+	private final CRC32 crc = new CRC32();
+
+	private MappedByteBuffer log;
+
+	/**
+	 * End of the last record
+	 */
+	private int position;
+
+	private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+	private boolean closed;
+
+	public MappedReservationRepository(Path file, ProductRepository productRepository, int snapshotInterval)
+			throws IOException {
+		this(file, productRepository, snapshotInterval, DEFAULT_MAPPED_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param snapshotInterval
+	 *            most events kept after a snapshot
+	 * @param initialMappedSize
+	 *            bytes mapped at first, the mapping doubles when full
+	 * @throws IOException
+	 *             if file cannot be opened or is not a reservation log
+	 */
+	public MappedReservationRepository(Path file, ProductRepository productRepository, int snapshotInterval,
+			int initialMappedSize) throws IOException {
+		if (snapshotInterval < 1)
+			throw new IllegalArgumentException("Snapshot interval has to be positive");
+
+		this.productRepository = productRepository;
+		this.snapshotInterval = snapshotInterval;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			boolean created = channel.size() == 0;
+			long size = Math.max(channel.size(), Math.max(initialMappedSize, FILE_HEADER_SIZE + TERMINATOR_SIZE));
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Reservation log " + file + " is too large");
+			log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+			if (created) {
+				log.putInt(0, MAGIC);
+				log.putInt(4, FORMAT);
+			} else if (log.getInt(0) != MAGIC || log.getInt(4) != FORMAT) {
+				throw new IOException(file + " is not a reservation log");
+			}
+			recover();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @throws OptimisticLockException
+	 *             if reservation is not based on the current version
+	 */
+	@Override
+	public synchronized void save(Reservation reservation) {
+		ensureOpen();
+		Id id = reservation.getId();
+		Stream stream = streams.get(id);
+		long currentVersion = stream == null ? 0 : stream.version;
+		if (reservation.getVersion() != currentVersion)
+			throw new OptimisticLockException(id, reservation.getVersion(), currentVersion);
+
+		long version = currentVersion + 1;
+		List<ReservationEvent> events = reservation.getUncommittedEvents();
+		boolean snapshot = stream == null || stream.removed != reservation.isRemoved()
+				|| stream.tailEvents + events.size() > snapshotInterval;
+
+		if (snapshot) {
+			int at = append(encode(SNAPSHOT, reservation, version, reservation.toEvents()));
+			stream = new Stream(at, reservation.isRemoved());
+			streams.put(id, stream);
+		} else {
+			stream.tail.add(append(encode(EVENTS, reservation, version, events)));
+			stream.tailEvents += events.size();
+		}
+		stream.version = version;
+
+		reservation.setVersion(version);
+		reservation.markEventsCommitted();
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if a product of the reservation is not found
+	 */
+	@Override
+	public Reservation load(Id reservationId) {
+		StoredReservation stored;
+		synchronized (this) {
+			ensureOpen();
+			Stream stream = streams.get(reservationId);
+			if (stream == null)
+				return null;
+			stored = read(stream);
+		}
+
+		Map<Id, Product> products = productRepository.loadAll(stored.productIds());
+		Reservation reservation = Reservation.restore(reservationId, stored.clientData, stored.createDate,
+				stored.events, products);
+		if (stored.removed)
+			reservation.markAsRemoved();
+		reservation.setVersion(stored.version);
+		return reservation;
+	}
+
+	/**
+	 * Forces written records to the disk.
+	 */
+	public synchronized void flush() {
+		ensureOpen();
+		log.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		log.force();
+		channel.close();
+	}
+
+	private void recover() {
+		int at = FILE_HEADER_SIZE;
+		while (at + RECORD_HEADER_SIZE <= log.capacity()) {
+			int length = log.getInt(at);
+			if (length <= 0 || length > log.capacity() - at - RECORD_HEADER_SIZE)
+				break;
+			ByteBuffer payload = payloadAt(at);
+			crc.reset();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != log.getInt(at + 4))
+				break;
+
+			index(at, payload);
+			at += RECORD_HEADER_SIZE + length;
+		}
+
+		position = at;
+		if (position + TERMINATOR_SIZE <= log.capacity())
+			log.putInt(position, 0);
+	}
+
+	private void index(int at, ByteBuffer payload) {
+		byte kind = payload.get();
+		Id id = BinaryFormat.getId(payload);
+		long version = payload.getLong();
+
+		Stream stream = streams.get(id);
+		if (kind == SNAPSHOT) {
+			stream = new Stream(at, payload.get() != 0);
+			streams.put(id, stream);
+		} else if (stream != null) {
+			stream.tail.add(at);
+			stream.tailEvents += payload.getInt();
+		} else {
+			return;
+		}
+		stream.version = version;
+	}
+
+	private StoredReservation read(Stream stream) {
+		StoredReservation stored = new StoredReservation();
+		stored.version = stream.version;
+
+		ByteBuffer snapshot = payloadAt(stream.snapshotPosition);
+		snapshot.get();
+		BinaryFormat.getId(snapshot);
+		snapshot.getLong();
+		stored.removed = snapshot.get() != 0;
+		stored.clientData = BinaryFormat.getClientData(snapshot);
+		stored.createDate = BinaryFormat.getDate(snapshot);
+		readEvents(snapshot, stored.events);
+
+		for (int at : stream.tail) {
+			ByteBuffer events = payloadAt(at);
+			events.get();
+			BinaryFormat.getId(events);
+			events.getLong();
+			readEvents(events, stored.events);
+		}
+		return stored;
+	}
+
+	private ByteBuffer encode(byte kind, Reservation reservation, long version, List<ReservationEvent> events) {
+		while (true) {
+			scratch.clear();
+			try {
+				scratch.put(kind);
+				BinaryFormat.putId(scratch, reservation.getId());
+				scratch.putLong(version);
+				if (kind == SNAPSHOT) {
+					scratch.put((byte) (reservation.isRemoved() ? 1 : 0));
+					BinaryFormat.putClientData(scratch, reservation.getClientData());
+					BinaryFormat.putDate(scratch, reservation.getCreateDate());
+				}
+				writeEvents(scratch, events);
+				scratch.flip();
+				return scratch;
+			} catch (BufferOverflowException e) {
+				scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+			}
+		}
+	}
+
+	private static void writeEvents(ByteBuffer buffer, List<ReservationEvent> events) {
+		buffer.putInt(events.size());
+		for (ReservationEvent event : events) {
+			buffer.put((byte) event.getType().ordinal());
+			if (event.getType() != ReservationEvent.Type.CLOSED) {
+				BinaryFormat.putId(buffer, event.getProductId());
+				buffer.putInt(event.getQuantity());
+			}
+		}
+	}
+
+	private static void readEvents(ByteBuffer buffer, List<ReservationEvent> events) {
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			switch (EVENT_TYPES[buffer.get()]) {
+			case ITEM_ADDED:
+				events.add(ReservationEvent.itemAdded(BinaryFormat.getId(buffer), buffer.getInt()));
+				break;
+			case QUANTITY_CHANGED:
+				events.add(ReservationEvent.quantityChanged(BinaryFormat.getId(buffer), buffer.getInt()));
+				break;
+			case CLOSED:
+				events.add(ReservationEvent.closed());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return position of the appended record
+	 */
+	private int append(ByteBuffer payload) {
+		int length = payload.remaining();
+		ensureCapacity((long) position + RECORD_HEADER_SIZE + length + TERMINATOR_SIZE);
+
+		crc.reset();
+		crc.update(payload.duplicate());
+
+		int at = position;
+		log.position(at + RECORD_HEADER_SIZE);
+		log.put(payload);
+		log.putInt(at + RECORD_HEADER_SIZE + length, 0);
+		log.putInt(at + 4, (int) crc.getValue());
+		log.putInt(at, length);
+
+		position = at + RECORD_HEADER_SIZE + length;
+		return at;
+	}
+
+	private void ensureCapacity(long needed) {
+		if (needed <= log.capacity())
+			return;
+		if (needed > Integer.MAX_VALUE)
+			throw new IllegalStateException("Reservation log is full");
+
+		long size = Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * log.capacity()));
+		try {
+			log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private ByteBuffer payloadAt(int at) {
+		ByteBuffer payload = log.duplicate();
+		payload.position(at + RECORD_HEADER_SIZE);
+		payload.limit(at + RECORD_HEADER_SIZE + log.getInt(at));
+		return payload.slice();
+	}
+
+	private void ensureOpen() {
+		if (closed)
+			throw new IllegalStateException("Repository closed");
+	}
+
+	/**
+	 * Where records of a reservation are
+	 */
+	private static class Stream {
+
+		private final int snapshotPosition;
+
+		private final boolean removed;
+
+		private final List<Integer> tail = new ArrayList<Integer>();
+
+		private int tailEvents;
+
+		private long version;
+
+		Stream(int snapshotPosition, boolean removed) {
+			this.snapshotPosition = snapshotPosition;
+			this.removed = removed;
+		}
+	}
+
+	private static class StoredReservation {
+
+		private long version;
+
+		private boolean removed;
+
+		private ClientData clientData;
+
+		private Date createDate;
+
+		private final List<ReservationEvent> events = new ArrayList<ReservationEvent>();
+
+		Set<Id> productIds() {
+			Set<Id> productIds = new LinkedHashSet<Id>();
+			for (ReservationEvent event : events)
+				if (event.getType() == ReservationEvent.Type.ITEM_ADDED)
+					productIds.add(event.getProductId());
+			return productIds;
+		}
+	}
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationRepository;
+
+/**
+ * Write-behind decorator of a {@link ReservationRepository}.<br>
+ * Saves are kept in memory and written to the underlying repository in
+ * batches, by a background thread, once batchSize reservations are pending or
+ * flushInterval elapses. Repeated saves of the same reservation are merged -
+ * only its newest state is written, together with all changes not written
+ * yet. Loads see the newest saved state.<br>
+ * At most capacity reservations can be pending - saving another one blocks
+ * until a flush makes room. A failed write is retried with the next flush,
+ * so pending reservations are never dropped.<br>
+ * Versions are checked against the newest saved state, so stale saves are
+ * rejected immediately. Since merged saves reach the underlying repository
+ * once, callers see versions ahead of the underlying ones while a
+ * reservation has unwritten state. Once it is written, the reservation is
+ * forgotten and callers continue with the versions of the underlying
+ * repository - an instance saved before has to be loaded again.<br>
+ * {@link #flush()} is the durability barrier: it returns once everything
+ * saved before has been written, and reports failures of background writes.
+ */
+public class WriteBehindReservationRepository implements ReservationRepository, Closeable {
+
+	private final ReservationRepository delegate;
+
+	private final int capacity;
+
+	private final int batchSize;
+
+	private final long flushIntervalMillis;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notFull = lock.newCondition();
+
+	private final Condition flushNeeded = lock.newCondition();
+
+	private final Condition resolved = lock.newCondition();
+
+	/**
+	 * Serializes flushes
+	 */
+	private final Object flushLock = new Object();
+
+	/**
+	 * Reservations with pending or in flight state, and reservations whose
+	 * underlying version is being looked up for their first save
+	 */
+	private final Map<Id, Entry> entries = new HashMap<Id, Entry>();
+
+	/**
+	 * Ids of reservations with pending state, in order of their first save
+	 */
+	private final LinkedHashSet<Id> pending = new LinkedHashSet<Id>();
+
+	private RuntimeException failure;
+
+	private volatile boolean closed;
+
+	private final Thread flusher;
+
+	public WriteBehindReservationRepository(ReservationRepository delegate, int capacity, int batchSize,
+			long flushIntervalMillis) {
+		if (capacity < 1 || batchSize < 1)
+			throw new IllegalArgumentException("Capacity and batch size have to be positive");
+
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+
+		this.flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushInBackground();
+			}
+		}, "reservation-write-behind");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * The first save of a reservation without unwritten state loads it from
+	 * the underlying repository to check its version.
+	 * 
+	 * @throws OptimisticLockException
+	 *             if reservation is not based on the newest saved state
+	 * @throws IllegalStateException
+	 *             if repository has been closed
+	 */
+	@Override
+	public void save(Reservation reservation) {
+		Id id = reservation.getId();
+		lock.lock();
+		try {
+			Entry entry;
+			while (true) {
+				while (!closed && !pending.contains(id) && pending.size() >= capacity) {
+					flushNeeded.signal();
+					notFull.awaitUninterruptibly();
+				}
+				if (closed)
+					throw new IllegalStateException("Repository closed");
+
+				entry = entries.get(id);
+				if (entry == null)
+					resolve(id);
+				else if (entry.resolving)
+					resolved.awaitUninterruptibly();
+				else
+					break;
+			}
+
+			if (entry.version != reservation.getVersion()) {
+				if (entry.isIdle())
+					entries.remove(id);
+				throw new OptimisticLockException(id, reservation.getVersion(), entry.version);
+			}
+
+			Reservation merged = reservation.copy();
+			if (entry.pending != null)
+				merged.prependUncommittedEvents(entry.pending.getUncommittedEvents());
+			entry.pending = merged;
+			entry.version++;
+			reservation.setVersion(entry.version);
+			reservation.markEventsCommitted();
+
+			pending.add(id);
+			if (pending.size() >= batchSize)
+				flushNeeded.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Reservation load(Id reservationId) {
+		Reservation newest = newest(reservationId);
+		if (newest != null)
+			return newest;
+
+		Reservation reservation = delegate.load(reservationId);
+		if (reservation == null)
+			return null;
+
+		Reservation saved = newest(reservationId);
+		return saved != null ? saved : reservation;
+	}
+
+	/**
+	 * Writes all reservations saved so far to the underlying repository.
+	 * 
+	 * @throws RuntimeException
+	 *             first failure of the underlying repository since previous
+	 *             flush, the failed reservations stay pending and are written
+	 *             again with the next flush
+	 */
+	public void flush() {
+		flushPending();
+
+		lock.lock();
+		try {
+			RuntimeException reported = failure;
+			failure = null;
+			if (reported != null)
+				throw reported;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the background thread and flushes.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			flushNeeded.signal();
+			notFull.signalAll();
+			resolved.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * Registers an entry for reservationId based on the version in the
+	 * underlying repository. Releases the lock while loading, other saves of
+	 * the reservation wait until the entry is resolved.
+	 */
+	private void resolve(Id reservationId) {
+		Entry entry = new Entry();
+		entries.put(reservationId, entry);
+
+		boolean loaded = false;
+		lock.unlock();
+		try {
+			Reservation stored = delegate.load(reservationId);
+			entry.version = entry.storedVersion = stored == null ? 0 : stored.getVersion();
+			loaded = true;
+		} finally {
+			lock.lock();
+			entry.resolving = false;
+			if (!loaded)
+				entries.remove(reservationId);
+			resolved.signalAll();
+		}
+	}
+
+	private Reservation newest(Id reservationId) {
+		lock.lock();
+		try {
+			Entry entry = entries.get(reservationId);
+			if (entry == null || entry.newest() == null)
+				return null;
+			return entry.copyNewest();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void flushInBackground() {
+		boolean failed = false;
+		while (!closed) {
+			lock.lock();
+			try {
+				if ((failed || pending.size() < batchSize) && !closed)
+					flushNeeded.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+			failed = !flushPending();
+		}
+	}
+
+	/**
+	 * @return false if any write failed
+	 */
+	private boolean flushPending() {
+		synchronized (flushLock) {
+			boolean written = true;
+			List<Entry> batch = takePending();
+			for (Entry entry : batch)
+				written &= write(entry);
+			return written;
+		}
+	}
+
+	private List<Entry> takePending() {
+		lock.lock();
+		try {
+			List<Entry> batch = new ArrayList<Entry>(pending.size());
+			for (Id id : pending) {
+				Entry entry = entries.get(id);
+				entry.inFlight = entry.pending;
+				entry.pending = null;
+				batch.add(entry);
+			}
+			pending.clear();
+			notFull.signalAll();
+			return batch;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean write(Entry entry) {
+		Reservation reservation = entry.inFlight;
+		reservation.setVersion(entry.storedVersion);
+		RuntimeException writeFailure = null;
+		try {
+			delegate.save(reservation);
+		} catch (RuntimeException e) {
+			writeFailure = e;
+		}
+
+		lock.lock();
+		try {
+			Id id = reservation.getId();
+			entry.inFlight = null;
+			if (writeFailure != null) {
+				if (failure == null)
+					failure = writeFailure;
+				// newer state carries only the changes made on top of the failed one
+				if (entry.pending != null)
+					entry.pending.prependUncommittedEvents(reservation.getUncommittedEvents());
+				else
+					entry.pending = reservation;
+				pending.add(id);
+				return false;
+			}
+
+			entry.storedVersion = reservation.getVersion();
+			if (entry.isIdle())
+				entries.remove(id);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static class Entry {
+
+		/**
+		 * Newest state not yet handed to the underlying repository
+		 */
+		private Reservation pending;
+
+		/**
+		 * State being written to the underlying repository
+		 */
+		private Reservation inFlight;
+
+		/**
+		 * Version of the newest state, as seen by callers
+		 */
+		private long version;
+
+		/**
+		 * Version in the underlying repository
+		 */
+		private long storedVersion;
+
+		/**
+		 * Set until the underlying version is known
+		 */
+		private boolean resolving = true;
+
+		boolean isIdle() {
+			return pending == null && inFlight == null;
+		}
+
+		Reservation newest() {
+			return pending != null ? pending : inFlight;
+		}
+
+		Reservation copyNewest() {
+			Reservation copy = newest().copy();
+			copy.markEventsCommitted();
+			copy.setVersion(version);
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Building blocks of the compact binary format used to ship domain snapshots
+ * between services and into caches.<br>
+ * Values are written in a fixed order, without field names or type
+ * information. Top level records start with {@link #FORMAT_VERSION}. Nullable
+ * values are preceded by a presence byte, strings by their UTF-8 length.
+ */
+public final class BinaryFormat {
+
+	public static final byte FORMAT_VERSION = 2;
+
+	private static final byte ABSENT = 0;
+
+	private static final byte PRESENT = 1;
+
+	private static final byte INFLATED_MONEY = 2;
+
+	private static final byte TEXT_ID = 2;
+
+	private BinaryFormat() {
+	}
+
+	public static void putVersion(ByteBuffer buffer) {
+		buffer.put(FORMAT_VERSION);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the record was written in a different format version
+	 */
+	public static void checkVersion(ByteBuffer buffer) {
+		byte version = buffer.get();
+		if (version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported format version: " + version);
+	}
+
+	public static boolean putPresence(ByteBuffer buffer, Object value) {
+		buffer.put(value == null ? ABSENT : PRESENT);
+		return value != null;
+	}
+
+	public static boolean getPresence(ByteBuffer buffer) {
+		return buffer.get() != ABSENT;
+	}
+
+	public static void putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	public static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static void putDate(ByteBuffer buffer, Date value) {
+		if (putPresence(buffer, value))
+			buffer.putLong(value.getTime());
+	}
+
+	public static Date getDate(ByteBuffer buffer) {
+		if (!getPresence(buffer))
+			return null;
+		return new Date(buffer.getLong());
+	}
+
+	/**
+	 * UUID ids are written as their 16 bytes, other ids as text.
+	 */
+	public static void putId(ByteBuffer buffer, Id id) {
+		if (id == null) {
+			buffer.put(ABSENT);
+		} else if (id.hasBits()) {
+			buffer.put(PRESENT);
+			buffer.putLong(id.getMostSignificantBits());
+			buffer.putLong(id.getLeastSignificantBits());
+		} else {
+			buffer.put(TEXT_ID);
+			putString(buffer, id.getId());
+		}
+	}
+
+	public static Id getId(ByteBuffer buffer) {
+		byte kind = buffer.get();
+		if (kind == ABSENT)
+			return null;
+		if (kind == PRESENT)
+			return Id.fromBits(buffer.getLong(), buffer.getLong());
+		return new Id(getString(buffer));
+	}
+
+	public static void putClientData(ByteBuffer buffer, ClientData clientData) {
+		if (putPresence(buffer, clientData)) {
+			putId(buffer, clientData.getAggregateId());
+			putString(buffer, clientData.getName());
+		}
+	}
+
+	public static ClientData getClientData(ByteBuffer buffer) {
+		if (!getPresence(buffer))
+			return null;
+		return new ClientData(getId(buffer), getString(buffer));
+	}
+
+	/**
+	 * Amounts that fit a long are written as 8 bytes of minor units, larger
+	 * ones as the bytes of their unscaled value at scale 2, amounts loaded by
+	 * a persistence provider may come with any scale.
+	 */
+	public static void putMoney(ByteBuffer buffer, Money money) {
+		if (money == null) {
+			buffer.put(ABSENT);
+			return;
+		}
+
+		if (money.isCompact()) {
+			buffer.put(PRESENT);
+			buffer.putLong(money.units());
+		} else {
+			buffer.put(INFLATED_MONEY);
+			byte[] unscaled = money.denomination().setScale(2, RoundingMode.HALF_EVEN).unscaledValue()
+					.toByteArray();
+			buffer.putInt(unscaled.length);
+			buffer.put(unscaled);
+		}
+		putString(buffer, money.getCurrencyCode());
+	}
+
+	public static Money getMoney(ByteBuffer buffer) {
+		byte kind = buffer.get();
+		if (kind == ABSENT)
+			return null;
+		if (kind == PRESENT) {
+			long units = buffer.getLong();
+			return new Money(CurrencyRegistry.idOf(getString(buffer)), units);
+		}
+		byte[] unscaled = new byte[buffer.getInt()];
+		buffer.get(unscaled);
+		BigDecimal denomination = new BigDecimal(new BigInteger(unscaled), 2);
+		return new Money(denomination, CurrencyRegistry.idOf(getString(buffer)));
+	}
+}
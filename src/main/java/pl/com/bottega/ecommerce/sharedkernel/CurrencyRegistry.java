@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns currency codes used by {@link Money}.<br>
+ * Every code gets a small numeric id once, so that Money can compare
+ * currencies by id and resolve {@link Currency} without hashtable lookups.
+ */
+final class CurrencyRegistry {
+
+	private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * Indexed by id, id 0 is never assigned.
+	 */
+	private static volatile String[] codes = new String[1];
+
+	private static volatile Currency[] currencies = new Currency[1];
+
+	private CurrencyRegistry() {
+	}
+
+	static int idOf(String currencyCode) {
+		Integer id = IDS.get(currencyCode);
+		if (id != null)
+			return id;
+		return register(currencyCode);
+	}
+
+	static String codeOf(int id) {
+		return codes[id];
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the code is not a supported ISO 4217 code
+	 */
+	static Currency currencyOf(int id) {
+		Currency currency = currencies[id];
+		if (currency == null)
+			throw new IllegalArgumentException("Unsupported currency: " + codes[id]);
+		return currency;
+	}
+
+	private static synchronized int register(String currencyCode) {
+		Integer id = IDS.get(currencyCode);
+		if (id != null)
+			return id;
+
+		int newId = codes.length;
+		String[] newCodes = Arrays.copyOf(codes, newId + 1);
+		Currency[] newCurrencies = Arrays.copyOf(currencies, newId + 1);
+		newCodes[newId] = currencyCode;
+		newCurrencies[newId] = lookup(currencyCode);
+		codes = newCodes;
+		currencies = newCurrencies;
+
+		IDS.put(currencyCode, newId);
+		return newId;
+	}
+
+	private static Currency lookup(String currencyCode) {
+		try {
+			return Currency.getInstance(currencyCode);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package pl.com.bottega.ecommerce.sharedkernel;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.Currency;
 
@@ -26,10 +27,29 @@ public class Money {
 
 	public static final Money ZERO = new Money(BigDecimal.ZERO);
 
+	private static final int SCALE = 2;
+
+	/**
+	 * Marks {@link #units} as not in use - the amount does not fit a long and
+	 * is kept in {@link #denomination} only.
+	 */
+	static final long INFLATED = Long.MIN_VALUE;
+
 	private BigDecimal denomination;
 
+	/**
+	 * Amount in minor units (cents), used by arithmetic whenever it fits.
+	 */
+	private long units = INFLATED;
+
 	private String currencyCode;
 
+	/**
+	 * {@link CurrencyRegistry} id of currencyCode, resolved lazily; 0 when not
+	 * yet known.
+	 */
+	private transient int currencyId;
+
 	protected Money() {
 	}
 
@@ -38,10 +58,22 @@ public class Money {
 	}
 
 	private Money(BigDecimal denomination, String currencyCode) {
-		this.denomination = denomination.setScale(2, RoundingMode.HALF_EVEN);
+		this.denomination = denomination.setScale(SCALE, RoundingMode.HALF_EVEN);
+		this.units = compactUnits(this.denomination);
 		this.currencyCode = currencyCode;
 	}
 
+	Money(BigDecimal denomination, int currencyId) {
+		this(denomination, CurrencyRegistry.codeOf(currencyId));
+		this.currencyId = currencyId;
+	}
+
+	Money(int currencyId, long units) {
+		this.units = units;
+		this.currencyCode = CurrencyRegistry.codeOf(currencyId);
+		this.currencyId = currencyId;
+	}
+
 	public Money(BigDecimal denomination) {
 		this(denomination, DEFAULT_CURRENCY);
 	}
@@ -59,11 +91,17 @@ public class Money {
 	}
 
 	public Money multiplyBy(double multiplier) {
+		if (isCompact() && multiplier == (int) multiplier) {
+			int factor = (int) multiplier;
+			long product = units * factor;
+			if (factor == 0 || (product / factor == units && product != INFLATED))
+				return new Money(currencyId(), product);
+		}
 		return multiplyBy(new BigDecimal(multiplier));
 	}
 
 	public Money multiplyBy(BigDecimal multiplier) {
-		return new Money(denomination.multiply(multiplier), currencyCode);
+		return new Money(denomination().multiply(multiplier), currencyId());
 	}
 
 	public Money add(Money money) {
@@ -71,34 +109,86 @@ public class Money {
 			throw new IllegalArgumentException("Currency mismatch");
 		}
 
-		return new Money(denomination.add(money.denomination), determineCurrencyCode(money));
+		if (isCompact() && money.isCompact()) {
+			long sum = units + money.units;
+			if (((units ^ sum) & (money.units ^ sum)) >= 0 && sum != INFLATED)
+				return new Money(determineCurrency(money), sum);
+		}
+		return new Money(denomination().add(money.denomination()), determineCurrency(money));
 	}
 
 	public Money subtract(Money money) {
 		if (!compatibleCurrency(money))
 			throw new IllegalArgumentException("Currency mismatch");
 
-		return new Money(denomination.subtract(money.denomination), determineCurrencyCode(money));
+		if (isCompact() && money.isCompact()) {
+			long difference = units - money.units;
+			if (((units ^ money.units) & (units ^ difference)) >= 0 && difference != INFLATED)
+				return new Money(determineCurrency(money), difference);
+		}
+		return new Money(denomination().subtract(money.denomination()), determineCurrency(money));
 	}
 
 	/**
 	 * Currency is compatible if the same or either money object has zero value.
 	 */
 	private boolean compatibleCurrency(Money money) {
-		return isZero(denomination) || isZero(money.denomination) || currencyCode.equals(money.getCurrencyCode());
+		return isZero() || money.isZero() || currencyId() == money.currencyId();
 	}
 
-	private boolean isZero(BigDecimal testedValue) {
-		return BigDecimal.ZERO.compareTo(testedValue) == 0;
+	boolean isZero() {
+		if (isCompact())
+			return units == 0;
+		return BigDecimal.ZERO.compareTo(denomination) == 0;
 	}
 
 	/**
-	 * @return currency from this object or otherCurrencyCode. Preferred is the
-	 *         one that comes from Money that has non-zero value.
+	 * @return currency id from this object or otherMoney. Preferred is the one
+	 *         that comes from Money that has non-zero value.
 	 */
-	private Currency determineCurrencyCode(Money otherMoney) {
-		String resultingCurrenctCode = isZero(denomination) ? otherMoney.currencyCode : currencyCode;
-		return Currency.getInstance(resultingCurrenctCode);
+	private int determineCurrency(Money otherMoney) {
+		return isZero() ? otherMoney.currencyId() : currencyId();
+	}
+
+	int currencyId() {
+		if (currencyId == 0)
+			currencyId = CurrencyRegistry.idOf(currencyCode);
+		return currencyId;
+	}
+
+	boolean isCompact() {
+		return units != INFLATED;
+	}
+
+	long units() {
+		return units;
+	}
+
+	/**
+	 * @return the amount as BigDecimal; created from units for compact amounts,
+	 *         otherwise the stored (possibly hydrated) denomination
+	 */
+	BigDecimal denomination() {
+		if (denomination == null && isCompact())
+			return BigDecimal.valueOf(units, SCALE);
+		return denomination;
+	}
+
+	/**
+	 * @return unscaled value of the given scale 2 amount or INFLATED if it does
+	 *         not fit a long
+	 */
+	private static long compactUnits(BigDecimal scaled) {
+		BigInteger unscaled = scaled.unscaledValue();
+		if (unscaled.bitLength() > 63)
+			return INFLATED;
+		return unscaled.longValue();
+	}
+
+	private int compareTo(Money other) {
+		if (isCompact() && other.isCompact())
+			return Long.compare(units, other.units);
+		return denomination().compareTo(other.denomination());
 	}
 
 	public String getCurrencyCode() {
@@ -106,24 +196,24 @@ public class Money {
 	}
 
 	public Currency getCurrency() {
-		return Currency.getInstance(currencyCode);
+		return CurrencyRegistry.currencyOf(currencyId());
 	}
 
 	public boolean greaterThan(Money other) {
-		return denomination.compareTo(other.denomination) > 0;
+		return compareTo(other) > 0;
 	}
 
 	public boolean lessThan(Money other) {
-		return denomination.compareTo(other.denomination) < 0;
+		return compareTo(other) < 0;
 	}
 
 	public boolean lessOrEquals(Money other) {
-		return denomination.compareTo(other.denomination) <= 0;
+		return compareTo(other) <= 0;
 	}
 
 	@Override
 	public String toString() {
-		return String.format("%0$.2f %s", denomination, getCurrency().getSymbol());
+		return String.format("%0$.2f %s", denomination(), getCurrency().getSymbol());
 	}
 
 	@Override
@@ -131,10 +221,21 @@ public class Money {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((currencyCode == null) ? 0 : currencyCode.hashCode());
-		result = prime * result + ((denomination == null) ? 0 : denomination.hashCode());
+		result = prime * result + denominationHashCode();
 		return result;
 	}
 
+	/**
+	 * Same value as BigDecimal.hashCode() of the amount, without creating it.
+	 */
+	private int denominationHashCode() {
+		if (!isCompact())
+			return (denomination == null) ? 0 : denomination.hashCode();
+		long magnitude = (units < 0) ? -units : units;
+		int temp = (int) (((int) (magnitude >>> 32)) * 31 + (magnitude & 0xFFFFFFFFL));
+		return 31 * ((units < 0) ? -temp : temp) + SCALE;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -144,7 +245,9 @@ public class Money {
 		if (getClass() != obj.getClass())
 			return false;
 		Money other = (Money) obj;
-		return compatibleCurrency(other) && Objects.areEqual(denomination, other.denomination);
+		if (isCompact() && other.isCompact())
+			return compatibleCurrency(other) && units == other.units;
+		return compatibleCurrency(other) && Objects.areEqual(denomination(), other.denomination());
 	}
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+
+/**
+ * Mutable running total of many {@link Money} amounts.<br>
+ * Sums in minor units without creating intermediate Money objects, falls
+ * back to BigDecimal only when the total no longer fits a long. Currency
+ * rules are the same as for a chain of {@link Money#add(Money)} calls started
+ * from {@link Money#ZERO}.
+ */
+public class MoneyAccumulator {
+
+	private long units;
+
+	/**
+	 * Total once it has overflowed the long representation, null before.
+	 */
+	private BigDecimal inflated;
+
+	private int currencyId;
+
+	public MoneyAccumulator() {
+		this(Money.ZERO);
+	}
+
+	public MoneyAccumulator(Money initial) {
+		this.currencyId = initial.currencyId();
+		if (initial.isCompact())
+			this.units = initial.units();
+		else
+			this.inflated = initial.denomination();
+	}
+
+	public void add(Money amount) {
+		if (amount.isCompact())
+			addUnits(amount.units(), amount.currencyId(), amount.isZero());
+		else
+			addDecimal(amount.denomination(), amount.currencyId());
+	}
+
+	/**
+	 * Adds unitPrice multiplied by quantity, same as
+	 * add(unitPrice.multiplyBy(quantity)).
+	 */
+	public void add(Money unitPrice, int quantity) {
+		if (unitPrice.isCompact()) {
+			long product = unitPrice.units() * quantity;
+			if (quantity == 0 || (product / quantity == unitPrice.units() && product != Money.INFLATED)) {
+				addUnits(product, unitPrice.currencyId(), product == 0);
+				return;
+			}
+		}
+		addDecimal(unitPrice.denomination().multiply(BigDecimal.valueOf(quantity)), unitPrice.currencyId());
+	}
+
+	public void addAll(Money[] amounts) {
+		for (Money amount : amounts)
+			add(amount);
+	}
+
+	/**
+	 * Adds unitPrices[i] multiplied by quantities[i] for every line.
+	 */
+	public void addAll(Money[] unitPrices, int[] quantities) {
+		if (unitPrices.length != quantities.length)
+			throw new IllegalArgumentException("Prices and quantities differ in length");
+		for (int i = 0; i < unitPrices.length; i++)
+			add(unitPrices[i], quantities[i]);
+	}
+
+	public void subtract(Money amount) {
+		if (amount.isCompact())
+			addUnits(-amount.units(), amount.currencyId(), amount.isZero());
+		else
+			addDecimal(amount.denomination().negate(), amount.currencyId());
+	}
+
+	/**
+	 * Scales the running total, same as total().multiplyBy(factor).
+	 */
+	public void multiplyBy(int factor) {
+		if (inflated == null) {
+			long product = units * factor;
+			if (factor == 0 || (product / factor == units && product != Money.INFLATED)) {
+				units = product;
+				return;
+			}
+			inflated = BigDecimal.valueOf(units, 2);
+		}
+		inflated = inflated.multiply(BigDecimal.valueOf(factor));
+	}
+
+	/**
+	 * Compares the running total with amount without creating the total.
+	 * Like {@link Money#greaterThan(Money)}, currencies are not checked.
+	 */
+	public int compareTo(Money amount) {
+		if (inflated == null && amount.isCompact())
+			return Long.compare(units, amount.units());
+		BigDecimal total = inflated != null ? inflated : BigDecimal.valueOf(units, 2);
+		return total.compareTo(amount.denomination());
+	}
+
+	public Money total() {
+		if (inflated != null)
+			return new Money(inflated, currencyId);
+		return new Money(currencyId, units);
+	}
+
+	public boolean isZero() {
+		if (inflated != null)
+			return inflated.signum() == 0;
+		return units == 0;
+	}
+
+	public static Money sum(Money... amounts) {
+		MoneyAccumulator total = new MoneyAccumulator();
+		total.addAll(amounts);
+		return total.total();
+	}
+
+	private void addUnits(long amount, int amountCurrencyId, boolean amountIsZero) {
+		int resultCurrencyId = resultCurrency(amountCurrencyId, amountIsZero);
+		if (inflated == null) {
+			long sum = units + amount;
+			if (((units ^ sum) & (amount ^ sum)) >= 0 && sum != Money.INFLATED) {
+				units = sum;
+				currencyId = resultCurrencyId;
+				return;
+			}
+			inflated = BigDecimal.valueOf(units, 2);
+		}
+		inflated = inflated.add(BigDecimal.valueOf(amount, 2));
+		currencyId = resultCurrencyId;
+	}
+
+	private void addDecimal(BigDecimal amount, int amountCurrencyId) {
+		int resultCurrencyId = resultCurrency(amountCurrencyId, amount.signum() == 0);
+		if (inflated == null)
+			inflated = BigDecimal.valueOf(units, 2);
+		inflated = inflated.add(amount);
+		currencyId = resultCurrencyId;
+	}
+
+	/**
+	 * @see Money#add(Money)
+	 */
+	private int resultCurrency(int amountCurrencyId, boolean amountIsZero) {
+		boolean totalIsZero = isZero();
+		if (!totalIsZero && !amountIsZero && currencyId != amountCurrencyId)
+			throw new IllegalArgumentException("Currency mismatch");
+		return totalIsZero ? amountCurrencyId : currencyId;
+	}
+}
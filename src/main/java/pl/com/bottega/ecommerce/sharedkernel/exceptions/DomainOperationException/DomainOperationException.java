@@ -2,8 +2,18 @@ package pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationExceptio
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 
+/**
+ * Rejection of an operation by the domain.<br>
+ * With system property {@value #STACKLESS_PROPERTY} set to true, exceptions
+ * created without stating otherwise do not capture stack traces, which makes
+ * frequent rejections cheap.
+ */
 public class DomainOperationException extends RuntimeException {
 
+	public static final String STACKLESS_PROPERTY = "pl.com.bottega.domainOperationException.stackless";
+
+	private static final boolean STACKLESS = Boolean.getBoolean(STACKLESS_PROPERTY);
+
 	/**
 	 * 
 	 */
@@ -11,8 +21,25 @@ public class DomainOperationException extends RuntimeException {
 	private Id id;
 
 	public DomainOperationException(Id id, String string) {
-		super(string);
+		this(id, string, !STACKLESS);
+	}
+
+	/**
+	 * 
+	 * @param writableStackTrace
+	 *            false to skip capturing the stack trace
+	 */
+	public DomainOperationException(Id id, String string, boolean writableStackTrace) {
+		super(string, null, true, writableStackTrace);
 		this.id = id;
 	}
 
+	/**
+	 * 
+	 * @return id of the aggregate that rejected the operation, may be null
+	 */
+	public Id getId() {
+		return id;
+	}
+
 }
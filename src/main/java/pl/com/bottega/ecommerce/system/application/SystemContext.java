@@ -2,8 +2,32 @@ package pl.com.bottega.ecommerce.system.application;
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 
+/**
+ * Holds the user of the request being handled by the current thread.<br>
+ * The user is created once per request, outside of a request the default
+ * user is shared.<br>
+ * The user is not propagated to other threads - work handed over to them,
+ * ex: commands run by a dispatcher's scheduler, has to carry the user itself.
+ */
 public class SystemContext {
+
+	private final SystemUser defaultUser = new SystemUser(new Id("1"));//TODO introduce security integration
+
+	private final ThreadLocal<SystemUser> requestUser = new ThreadLocal<SystemUser>();
+
 	public SystemUser getSystemUser(){
-		return new SystemUser(new Id("1"));//TODO introduce security integration
+		SystemUser user = requestUser.get();
+		return user != null ? user : defaultUser;
+	}
+
+	/**
+	 * Binds user of given client to the current thread until {@link #endRequest()}.
+	 */
+	public void beginRequest(Id clientId) {
+		requestUser.set(new SystemUser(clientId));
+	}
+
+	public void endRequest() {
+		requestUser.remove();
 	}
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class IdTest {
+
+	/**
+	 * new Id("0189f7a2-5c3e-7b1d-9a4e-3f2b1c0d9e8f") serialized by the String
+	 * only Id
+	 */
+	private static final String SERIALIZED_UUID_ID = "aced00057372003c706c2e636f6d2e626f74746567612e65636f6d6d657263652e63616e6f6e6963616c6d6f64656c2e7075626c69736865646c616e67756167652e4964c953fcaaa3d20c7e0200014c000269647400124c6a6176612f6c616e672f537472696e673b787074002430313839663761322d356333652d376231642d396134652d336632623163306439653866";
+
+	/**
+	 * new Id("client-42") serialized by the String only Id
+	 */
+	private static final String SERIALIZED_TEXT_ID = "aced00057372003c706c2e636f6d2e626f74746567612e65636f6d6d657263652e63616e6f6e6963616c6d6f64656c2e7075626c69736865646c616e67756167652e4964c953fcaaa3d20c7e0200014c000269647400124c6a6176612f6c616e672f537472696e673b7870740009636c69656e742d3432";
+
+	@Test
+	public void readsIdsSerializedBeforeBitsWereAdded() throws Exception {
+		Id uuid = (Id) deserialize(bytes(SERIALIZED_UUID_ID));
+		assertThat(uuid, is(new Id("0189f7a2-5c3e-7b1d-9a4e-3f2b1c0d9e8f")));
+		assertThat(uuid.hasBits(), is(true));
+
+		Id text = (Id) deserialize(bytes(SERIALIZED_TEXT_ID));
+		assertThat(text, is(new Id("client-42")));
+		assertThat(text.hasBits(), is(false));
+	}
+
+	@Test
+	public void idCreatedFromBitsIsWrittenWithItsText() throws Exception {
+		Id read = (Id) deserialize(serialize(Id.fromBits(0x0189f7a25c3e7b1dL, 0x9a4e3f2b1c0d9e8fL)));
+
+		assertThat(read, is(new Id("0189f7a2-5c3e-7b1d-9a4e-3f2b1c0d9e8f")));
+		assertThat(read.getId(), is("0189f7a2-5c3e-7b1d-9a4e-3f2b1c0d9e8f"));
+	}
+
+	@Test
+	public void generatedIdSurvivesSerialization() throws Exception {
+		Id id = Id.generate();
+		Id read = (Id) deserialize(serialize(id));
+
+		assertThat(read, is(id));
+		assertThat(read.hashCode(), is(id.hashCode()));
+		assertThat(read.getMostSignificantBits(), is(id.getMostSignificantBits()));
+		assertThat(read.getLeastSignificantBits(), is(id.getLeastSignificantBits()));
+	}
+
+	@Test
+	public void concurrentlyGeneratedIdsAreUniqueAndOrderedPerThread() throws Exception {
+		final int threads = 8;
+		final int perThread = 20000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Id[]>> futures = new ArrayList<Future<Id[]>>(threads);
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(new Callable<Id[]>() {
+					@Override
+					public Id[] call() throws Exception {
+						start.await();
+						Id[] ids = new Id[perThread];
+						for (int i = 0; i < perThread; i++)
+							ids[i] = Id.generate();
+						return ids;
+					}
+				}));
+			}
+			start.countDown();
+
+			Set<Id> all = new HashSet<Id>();
+			for (Future<Id[]> future : futures) {
+				Id[] ids = future.get();
+				for (int i = 0; i < ids.length; i++) {
+					assertThat(all.add(ids[i]), is(true));
+					assertThat(new Id(ids[i].getId()), is(ids[i]));
+					if (i > 0) {
+						assertThat(ids[i].getMostSignificantBits() > ids[i - 1].getMostSignificantBits(), is(true));
+						assertThat(ids[i].getId().compareTo(ids[i - 1].getId()) > 0, is(true));
+					}
+				}
+			}
+			assertThat(all.size(), is(threads * perThread));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static byte[] serialize(Object object) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws Exception {
+		return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+
+	private static byte[] bytes(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		return bytes;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+public class InvoiceCodecTest {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+	@Test
+	public void invoiceRoundTrip() {
+		Invoice invoice = invoice(Id.generate(), new ClientData(Id.generate(), "client"));
+
+		buffer.clear();
+		InvoiceCodec.encode(invoice, buffer);
+		buffer.flip();
+
+		assertSame(InvoiceCodec.decode(buffer), invoice);
+		assertThat(buffer.hasRemaining(), is(false));
+	}
+
+	@Test
+	public void invoiceWithTotalsRoundTrip() {
+		Invoice invoice = invoice(new Id("FV/2014/10/1"), new ClientData(new Id("client-1"), "client"));
+
+		buffer.clear();
+		InvoiceCodec.encodeWithTotals(invoice, buffer);
+		buffer.flip();
+
+		assertSame(InvoiceCodec.decodeWithTotals(buffer), invoice);
+		assertThat(buffer.hasRemaining(), is(false));
+	}
+
+	@Test
+	public void lineRoundTrip() {
+		InvoiceLine line = line(Id.generate(), new Money(new BigDecimal("92233720368547758.08")), 3, "0.23");
+
+		buffer.clear();
+		InvoiceCodec.encode(line, buffer);
+		buffer.flip();
+
+		assertSame(InvoiceCodec.decodeLine(buffer), line);
+		assertThat(buffer.hasRemaining(), is(false));
+	}
+
+	private static Invoice invoice(Id id, ClientData client) {
+		Invoice invoice = new Invoice(id, client);
+		invoice.addItem(line(Id.generate(), new Money(3.99), 2, "0.07"));
+		invoice.addItem(line(new Id("drug-1"), new Money(20), 1, "0.05"));
+		invoice.addItem(line(Id.generate(), new Money(new BigDecimal("1e22")), 5, "0.23"));
+		return invoice;
+	}
+
+	private static InvoiceLine line(Id productId, Money price, int quantity, String rate) {
+		ProductData product = new Product(productId, price, "product " + productId, ProductType.STANDARD)
+				.generateSnapshot();
+		Money net = price.multiplyBy(quantity);
+		return new InvoiceLine(product, quantity, net, new Tax(net.multiplyBy(new BigDecimal(rate)), rate));
+	}
+
+	private static void assertSame(Invoice read, Invoice invoice) {
+		assertThat(read.getId(), is(invoice.getId()));
+		assertThat(read.getId().getId(), is(invoice.getId().getId()));
+		assertThat(read.getClient().getAggregateId(), is(invoice.getClient().getAggregateId()));
+		assertThat(read.getClient().getName(), is(invoice.getClient().getName()));
+		assertThat(read.getNet(), is(invoice.getNet()));
+		assertThat(read.getGros(), is(invoice.getGros()));
+		assertThat(read.getItems().size(), is(invoice.getItems().size()));
+		for (int i = 0; i < invoice.getItems().size(); i++)
+			assertSame(read.getItems().get(i), invoice.getItems().get(i));
+	}
+
+	private static void assertSame(InvoiceLine read, InvoiceLine line) {
+		assertThat(read.getProduct(), is(line.getProduct()));
+		assertThat(read.getProduct().getSnapshotDate(), is(line.getProduct().getSnapshotDate()));
+		assertThat(read.getQuantity(), is(line.getQuantity()));
+		assertThat(read.getNet(), is(line.getNet()));
+		assertThat(read.getGros(), is(line.getGros()));
+		assertThat(read.getTax().getAmount(), is(line.getTax().getAmount()));
+		assertThat(read.getTax().getDescription(), is(line.getTax().getDescription()));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+public class OfferCodecTest {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+	@Test
+	public void offerRoundTrip() {
+		ProductData milk = product(Id.generate(), new Money(2.49), ProductType.FOOD);
+		ProductData pill = product(new Id("pill-7"), new Money(15), ProductType.DRUG);
+		ProductData yacht = product(Id.generate(), new Money(new BigDecimal("123456789012345678901.23")),
+				ProductType.STANDARD);
+
+		List<OfferItem> available = Arrays.asList(new OfferItem(milk, 3),
+				new OfferItem(pill, 2, new Discount("loyalty", new Money(1.5))),
+				new OfferItem(yacht, 1, new Discount("season", new Money(new BigDecimal("99999999999999999999.99")))));
+		List<OfferItem> unavailable = Arrays.asList(new OfferItem(product(new Id("gone"), new Money(7), null), 5));
+		Offer offer = new Offer(available, unavailable);
+
+		buffer.clear();
+		OfferCodec.encode(offer, buffer);
+		buffer.flip();
+		Offer read = OfferCodec.decode(buffer);
+
+		assertThat(buffer.hasRemaining(), is(false));
+		assertThat(read, is(offer));
+		assertThat(read.getTotalCost(), is(offer.getTotalCost()));
+		assertThat(read.getFingerprint(), is(offer.getFingerprint()));
+		for (int i = 0; i < available.size(); i++) {
+			OfferItem item = read.getAvailabeItems().get(i);
+			assertThat(item.getTotalCost(), is(available.get(i).getTotalCost()));
+			assertThat(item.getProductData().getProductId().getId(),
+					is(available.get(i).getProductData().getProductId().getId()));
+			assertThat(item.getProductData().getSnapshotDate(), is(available.get(i).getProductData().getSnapshotDate()));
+		}
+	}
+
+	@Test
+	public void emptyOfferRoundTrip() {
+		Offer offer = new Offer(Collections.<OfferItem> emptyList(), Collections.<OfferItem> emptyList());
+
+		buffer.clear();
+		OfferCodec.encode(offer, buffer);
+		buffer.flip();
+
+		assertThat(OfferCodec.decode(buffer), is(offer));
+	}
+
+	@Test
+	public void itemRoundTrip() {
+		List<OfferItem> items = new ArrayList<OfferItem>();
+		items.add(new OfferItem(product(Id.generate(), new Money(10), ProductType.STANDARD), 4,
+				new Discount("bulk", new Money(4))));
+		items.add(new OfferItem(product(new Id("text"), new Money(new BigDecimal("1e20")), ProductType.FOOD), 1));
+
+		for (OfferItem item : items) {
+			buffer.clear();
+			OfferCodec.encode(item, buffer);
+			buffer.flip();
+			OfferItem read = OfferCodec.decodeItem(buffer);
+
+			assertThat(buffer.hasRemaining(), is(false));
+			assertThat(read, is(item));
+			assertThat(read.getDiscount(), is(item.getDiscount()));
+		}
+	}
+
+	private static ProductData product(Id id, Money price, ProductType type) {
+		return new Product(id, price, "product " + id, type).generateSnapshot();
+	}
+}
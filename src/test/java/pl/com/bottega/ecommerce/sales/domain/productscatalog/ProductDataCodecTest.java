@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.productscatalog;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Currency;
+import java.util.Date;
+
+import org.junit.Test;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+public class ProductDataCodecTest {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+	@Test
+	public void roundTripWithUuidId() {
+		assertRoundTrip(new ProductData(Id.generate(), new Money(12.99), "milk", ProductType.FOOD, new Date()));
+	}
+
+	@Test
+	public void roundTripWithTextIdAndInflatedPrice() {
+		assertRoundTrip(new ProductData(new Id("product-1"), new Money(new BigDecimal("1e25"), Currency.getInstance("USD")), "yacht",
+				ProductType.STANDARD, new Date(0)));
+	}
+
+	@Test
+	public void roundTripWithNulls() {
+		ProductData read = assertRoundTrip(new ProductData(new Id("p"), new Money(1), null, null, null));
+		assertThat(read.getName(), is(nullValue()));
+		assertThat(read.getType(), is(nullValue()));
+		assertThat(read.getSnapshotDate(), is(nullValue()));
+	}
+
+	private ProductData assertRoundTrip(ProductData productData) {
+		buffer.clear();
+		ProductDataCodec.encode(productData, buffer);
+		buffer.flip();
+		ProductData read = ProductDataCodec.decode(buffer);
+
+		assertThat(buffer.hasRemaining(), is(false));
+		assertThat(read, is(productData));
+		assertThat(read.getProductId().getId(), is(productData.getProductId().getId()));
+		assertThat(read.getPrice().getCurrencyCode(), is(productData.getPrice().getCurrencyCode()));
+		assertThat(read.getSnapshotDate(), is(productData.getSnapshotDate()));
+		return read;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+public class ReservationTest {
+
+	private final Product first = new Product(Id.generate(), new Money(1), "first", ProductType.STANDARD);
+
+	private final Product second = new Product(Id.generate(), new Money(2), "second", ProductType.FOOD);
+
+	@Test
+	public void changesBetweenSavesKeepOneEventPerProduct() {
+		Reservation reservation = newReservation(Collections.<ReservationEvent> emptyList());
+		for (int i = 0; i < 1000; i++) {
+			reservation.add(first, 2);
+			reservation.add(second, 1);
+			reservation.add(first, -1);
+		}
+		reservation.close();
+
+		List<ReservationEvent> events = reservation.getUncommittedEvents();
+		assertThat(events.size(), is(3));
+		assertThat(events.get(0), is(ReservationEvent.itemAdded(first.getId(), 1000)));
+		assertThat(events.get(1), is(ReservationEvent.itemAdded(second.getId(), 1000)));
+		assertThat(events.get(2), is(ReservationEvent.closed()));
+		assertSameItems(newReservation(events), reservation);
+	}
+
+	@Test
+	public void changesAfterSaveAreFoldedIntoQuantityChanges() {
+		Reservation reservation = newReservation(Collections.<ReservationEvent> emptyList());
+		reservation.add(first, 3);
+		reservation.add(second, 1);
+		List<ReservationEvent> saved = new ArrayList<ReservationEvent>(reservation.getUncommittedEvents());
+		reservation.markEventsCommitted();
+
+		reservation.add(second, 4);
+		reservation.add(first, -2);
+		reservation.add(second, -1);
+
+		List<ReservationEvent> events = reservation.getUncommittedEvents();
+		assertThat(events.size(), is(2));
+		assertThat(events.get(0), is(ReservationEvent.quantityChanged(second.getId(), 3)));
+		assertThat(events.get(1), is(ReservationEvent.quantityChanged(first.getId(), -2)));
+
+		List<ReservationEvent> all = new ArrayList<ReservationEvent>(saved);
+		all.addAll(events);
+		assertSameItems(newReservation(all), reservation);
+	}
+
+	@Test
+	public void changesAreFoldedIntoPrependedEvents() {
+		Reservation reservation = newReservation(Collections.singletonList(ReservationEvent.itemAdded(first.getId(), 1)));
+		reservation.prependUncommittedEvents(Collections.singletonList(ReservationEvent.quantityChanged(first.getId(), 2)));
+		reservation.add(first, 1);
+		reservation.add(second, 1);
+
+		List<ReservationEvent> events = reservation.getUncommittedEvents();
+		assertThat(events.size(), is(2));
+		assertThat(events.get(0), is(ReservationEvent.quantityChanged(first.getId(), 3)));
+		assertThat(events.get(1), is(ReservationEvent.itemAdded(second.getId(), 1)));
+	}
+
+	private Reservation newReservation(List<ReservationEvent> events) {
+		Map<Id, Product> products = new HashMap<Id, Product>();
+		products.put(first.getId(), first);
+		products.put(second.getId(), second);
+		return Reservation.restore(new Id("1"), new ClientData(new Id("2"), "client"), new Date(0), events, products);
+	}
+
+	private static void assertSameItems(Reservation actual, Reservation expected) {
+		assertThat(actual.toEvents(), is(expected.toEvents()));
+		assertThat(actual.isClosed(), is(expected.isClosed()));
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import pl.com.bottega.ddd.support.domain.BaseAggregateRoot;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.client.Client;
+import pl.com.bottega.ecommerce.sales.domain.client.ClientRepository;
+
+public class CachingClientRepositoryTest {
+
+	private final Id clientId = Id.generate();
+
+	private final SlowRepository delegate = new SlowRepository();
+
+	private final CachingClientRepository repository = new CachingClientRepository(delegate, 1, TimeUnit.HOURS);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void loadsAreCachedUntilSave() throws Exception {
+		delegate.save(client(clientId, "client"));
+
+		repository.load(clientId);
+		repository.load(clientId);
+		assertThat(delegate.loads.get(), is(1));
+
+		repository.save(client(clientId, "renamed"));
+		assertThat(repository.loadClientData(clientId).getName(), is("renamed"));
+		assertThat(delegate.loads.get(), is(2));
+	}
+
+	@Test
+	public void loadRacingSaveIsNotCached() throws Exception {
+		delegate.save(client(clientId, "client"));
+		delegate.block = new CountDownLatch(1);
+
+		Future<Client> stale = executor.submit(new Callable<Client>() {
+			@Override
+			public Client call() {
+				return repository.load(clientId);
+			}
+		});
+		assertThat(delegate.entered.await(10, TimeUnit.SECONDS), is(true));
+
+		repository.save(client(clientId, "renamed"));
+		delegate.block.countDown();
+		assertThat(stale.get(10, TimeUnit.SECONDS).generateSnapshot().getName(), is("client"));
+
+		assertThat(repository.loadClientData(clientId).getName(), is("renamed"));
+	}
+
+	private static Client client(Id id, String name) throws Exception {
+		Client client = new Client();
+		set(BaseAggregateRoot.class, client, "id", id);
+		set(Client.class, client, "name", name);
+		return client;
+	}
+
+	private static void set(Class<?> type, Object target, String name, Object value) throws Exception {
+		Field field = type.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	/**
+	 * Loads wait for block to be released, after reading the stored client
+	 */
+	private static class SlowRepository implements ClientRepository {
+
+		private final ConcurrentMap<Id, Client> stored = new ConcurrentHashMap<Id, Client>();
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		private final AtomicInteger loads = new AtomicInteger();
+
+		private volatile CountDownLatch block;
+
+		@Override
+		public Client load(Id id) {
+			loads.incrementAndGet();
+			Client client = stored.get(id).copy();
+			entered.countDown();
+			CountDownLatch latch = block;
+			if (latch != null) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return client;
+		}
+
+		@Override
+		public void save(Client client) {
+			stored.put(client.getId(), client.copy());
+		}
+	}
+}
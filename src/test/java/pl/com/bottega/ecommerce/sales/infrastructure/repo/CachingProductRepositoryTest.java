@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+public class CachingProductRepositoryTest {
+
+	private final CountingRepository delegate = new CountingRepository();
+
+	private final CachingProductRepository repository = new CachingProductRepository(delegate, 100);
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void loadsReturnPrivateCopies() {
+		Product product = newProduct();
+		delegate.save(product);
+
+		Product loaded = repository.load(product.getId());
+		Product cached = repository.load(product.getId());
+		Product batched = repository.loadAll(Arrays.asList(product.getId())).get(product.getId());
+		assertThat(loaded, not(sameInstance(cached)));
+		assertThat(batched, not(sameInstance(cached)));
+		assertThat(delegate.loads, is(1));
+
+		loaded.changeBestBefore(new Date(0));
+		loaded.markAsRemoved();
+
+		Product reloaded = repository.load(product.getId());
+		assertThat(reloaded.getBestBefore(), is(product.getBestBefore()));
+		assertThat(reloaded.isRemoved(), is(false));
+		assertThat(delegate.loads, is(1));
+	}
+
+	@Test
+	public void savingProductDropsItsCachedCopy() {
+		Product product = newProduct();
+		delegate.save(product);
+
+		Product changed = repository.load(product.getId());
+		changed.changeBestBefore(new Date(0));
+		repository.save(changed);
+
+		assertThat(repository.load(product.getId()).getBestBefore(), is(new Date(0)));
+		assertThat(repository.loadAll(Arrays.asList(product.getId())).get(product.getId()).getBestBefore(),
+				is(new Date(0)));
+		assertThat(delegate.loads, is(2));
+	}
+
+	@Test
+	public void loadAllJoinsRunningLoadOfTheSameProduct() throws Exception {
+		final Product slow = newProduct();
+		final Product other = newProduct();
+		delegate.save(slow);
+		delegate.save(other);
+		delegate.block = new CountDownLatch(1);
+
+		Future<Product> single = executor.submit(new Callable<Product>() {
+			@Override
+			public Product call() {
+				return repository.load(slow.getId());
+			}
+		});
+		assertThat(delegate.entered.await(10, TimeUnit.SECONDS), is(true));
+
+		Future<Map<Id, Product>> batch = executor.submit(new Callable<Map<Id, Product>>() {
+			@Override
+			public Map<Id, Product> call() {
+				return repository.loadAll(Arrays.asList(slow.getId(), other.getId()));
+			}
+		});
+		while (delegate.batches.isEmpty())
+			Thread.sleep(1);
+		delegate.block.countDown();
+
+		Map<Id, Product> loaded = batch.get(10, TimeUnit.SECONDS);
+		assertThat(single.get(10, TimeUnit.SECONDS).getId(), is(slow.getId()));
+		assertThat(new ArrayList<Id>(loaded.keySet()), is(Arrays.asList(slow.getId(), other.getId())));
+		assertThat(delegate.loads, is(1));
+		assertThat(delegate.batches, is(Arrays.asList(Arrays.asList(other.getId()))));
+	}
+
+	private static Product newProduct() {
+		return new Product(Id.generate(), new Money(1), "product", ProductType.FOOD, new Date(1413500000000L));
+	}
+
+	/**
+	 * Counts calls, single loads wait for block to be released
+	 */
+	private static class CountingRepository extends InMemoryProductRepository {
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		private final List<List<Id>> batches = new CopyOnWriteArrayList<List<Id>>();
+
+		private volatile CountDownLatch block;
+
+		private volatile int loads;
+
+		@Override
+		public Product load(Id productId) {
+			loads++;
+			entered.countDown();
+			if (block != null) {
+				try {
+					block.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.load(productId);
+		}
+
+		@Override
+		public Map<Id, Product> loadAll(Collection<Id> productIds) {
+			batches.add(new ArrayList<Id>(productIds));
+			return super.loadAll(productIds);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationEvent;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservedProduct;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Concurrent load, add, save loops retrying on {@link OptimisticLockException}
+ */
+public class InMemoryReservationRepositoryTest {
+
+	private static final int THREADS = 8;
+
+	private final InMemoryReservationRepository repository = new InMemoryReservationRepository();
+
+	private final Product product = new Product(Id.generate(), new Money(1), "product", ProductType.STANDARD);
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void concurrentAddsToSharedReservationsAreNotLost() throws Exception {
+		final List<Id> reservationIds = newReservations(4);
+		final int addsPerReservation = 2000;
+
+		run(THREADS, new Worker() {
+			@Override
+			public void work(int thread, AtomicLong conflicts) {
+				for (int i = 0; i < addsPerReservation; i++)
+					for (Id reservationId : reservationIds)
+						addOne(reservationId, conflicts);
+			}
+		});
+
+		for (Id reservationId : reservationIds) {
+			Reservation reservation = repository.load(reservationId);
+			assertThat(quantityOf(reservation), is(THREADS * addsPerReservation));
+			assertThat(reservation.getVersion(), is(1L + THREADS * addsPerReservation));
+		}
+	}
+
+	@Test
+	public void savesOfDifferentReservationsDoNotConflict() throws Exception {
+		final List<Id> reservationIds = newReservations(THREADS);
+		final int adds = 5000;
+
+		AtomicLong conflicts = run(THREADS, new Worker() {
+			@Override
+			public void work(int thread, AtomicLong conflicts) {
+				for (int i = 0; i < adds; i++)
+					addOne(reservationIds.get(thread), conflicts);
+			}
+		});
+
+		assertThat(conflicts.get(), is(0L));
+		for (Id reservationId : reservationIds)
+			assertThat(quantityOf(repository.load(reservationId)), is(adds));
+	}
+
+	private void addOne(Id reservationId, AtomicLong conflicts) {
+		while (true) {
+			Reservation reservation = repository.load(reservationId);
+			reservation.add(product, 1);
+			try {
+				repository.save(reservation);
+				return;
+			} catch (OptimisticLockException e) {
+				conflicts.incrementAndGet();
+			}
+		}
+	}
+
+	private List<Id> newReservations(int count) {
+		List<Id> ids = new ArrayList<Id>(count);
+		for (int i = 0; i < count; i++) {
+			Reservation reservation = Reservation.restore(Id.generate(), new ClientData(Id.generate(), "client"),
+					new Date(), Collections.<ReservationEvent> emptyList(), Collections.<Id, Product> emptyMap());
+			repository.save(reservation);
+			ids.add(reservation.getId());
+		}
+		return ids;
+	}
+
+	private static int quantityOf(Reservation reservation) {
+		int quantity = 0;
+		for (ReservedProduct reservedProduct : reservation.getReservedProducts())
+			quantity += reservedProduct.getQuantity();
+		return quantity;
+	}
+
+	private AtomicLong run(int threads, final Worker worker) throws Exception {
+		final AtomicLong conflicts = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					worker.work(thread, conflicts);
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<Void> future : futures)
+			future.get();
+		return conflicts;
+	}
+
+	private interface Worker {
+		void work(int thread, AtomicLong conflicts);
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sales.infrastructure.repo;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationEvent;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationRepository;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservedProduct;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Batch size and flush interval are large enough for the background thread
+ * to stay idle, so writes happen only on {@link WriteBehindReservationRepository#flush()}.
+ */
+public class WriteBehindReservationRepositoryTest {
+
+	private final FlakyRepository delegate = new FlakyRepository();
+
+	private final WriteBehindReservationRepository repository = new WriteBehindReservationRepository(delegate, 100,
+			100, 3600 * 1000L);
+
+	private final Product product = new Product(Id.generate(), new Money(1), "product", ProductType.STANDARD);
+
+	@After
+	public void tearDown() {
+		repository.close();
+	}
+
+	@Test
+	public void savesAreWrittenOnFlush() {
+		Reservation reservation = newReservation();
+		reservation.add(product, 2);
+		repository.save(reservation);
+
+		assertThat(delegate.load(reservation.getId()), is(nullValue()));
+		assertThat(quantityOf(repository.load(reservation.getId())), is(2));
+
+		repository.flush();
+
+		assertThat(quantityOf(delegate.load(reservation.getId())), is(2));
+		assertThat(delegate.saves, is(1));
+	}
+
+	@Test
+	public void repeatedSavesAreWrittenOnceWithAllEvents() {
+		Reservation reservation = newReservation();
+		reservation.add(product, 1);
+		repository.save(reservation);
+		reservation.add(product, 1);
+		repository.save(reservation);
+		assertThat(reservation.getVersion(), is(2L));
+
+		repository.flush();
+
+		assertThat(delegate.saves, is(1));
+		assertThat(delegate.writtenEvents.size(), is(2));
+		Reservation stored = delegate.load(reservation.getId());
+		assertThat(quantityOf(stored), is(2));
+		assertThat(stored.getVersion(), is(1L));
+	}
+
+	@Test
+	public void staleSaveIsRejectedBeforeFlush() {
+		Reservation reservation = newReservation();
+		repository.save(reservation);
+		Reservation stale = repository.load(reservation.getId());
+		reservation.add(product, 1);
+		repository.save(reservation);
+
+		stale.add(product, 1);
+		try {
+			repository.save(stale);
+			fail("Stale save accepted");
+		} catch (OptimisticLockException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void instanceSavedBeforeFlushIsRejectedOnItsNextSave() {
+		Reservation reservation = newReservation();
+		repository.save(reservation);
+		reservation.add(product, 1);
+		repository.save(reservation);
+		repository.flush();
+
+		reservation.add(product, 1);
+		try {
+			repository.save(reservation);
+			fail("Save based on a version ahead of the written one accepted");
+		} catch (OptimisticLockException e) {
+			// expected, written state continues with the underlying version
+		}
+
+		Reservation reloaded = repository.load(reservation.getId());
+		assertThat(reloaded.getVersion(), is(1L));
+		reloaded.add(product, 1);
+		repository.save(reloaded);
+		repository.flush();
+		assertThat(quantityOf(delegate.load(reservation.getId())), is(2));
+	}
+
+	@Test
+	public void failedWriteIsRequeued() {
+		Reservation reservation = newReservation();
+		reservation.add(product, 1);
+		repository.save(reservation);
+
+		delegate.failures = 1;
+		try {
+			repository.flush();
+			fail("Failure of the underlying repository not reported");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("write failed"));
+		}
+		assertThat(delegate.load(reservation.getId()), is(nullValue()));
+		assertThat(quantityOf(repository.load(reservation.getId())), is(1));
+
+		reservation.add(product, 1);
+		repository.save(reservation);
+		repository.flush();
+
+		Reservation stored = delegate.load(reservation.getId());
+		assertThat(quantityOf(stored), is(2));
+		assertThat(stored.getVersion(), is(1L));
+		assertThat(delegate.writtenEvents.size(), is(2));
+	}
+
+	@Test
+	public void failureIsReportedOnce() {
+		Reservation reservation = newReservation();
+		repository.save(reservation);
+
+		delegate.failures = 1;
+		try {
+			repository.flush();
+			fail("Failure of the underlying repository not reported");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		repository.flush();
+
+		assertThat(delegate.load(reservation.getId()).getVersion(), is(1L));
+	}
+
+	private static Reservation newReservation() {
+		return Reservation.restore(Id.generate(), new ClientData(Id.generate(), "client"), new Date(),
+				Collections.<ReservationEvent> emptyList(), Collections.<Id, Product> emptyMap());
+	}
+
+	private static int quantityOf(Reservation reservation) {
+		int quantity = 0;
+		for (ReservedProduct reservedProduct : reservation.getReservedProducts())
+			quantity += reservedProduct.getQuantity();
+		return quantity;
+	}
+
+	/**
+	 * Fails the given number of saves, records events of successful ones
+	 */
+	private static class FlakyRepository implements ReservationRepository {
+
+		private final InMemoryReservationRepository repository = new InMemoryReservationRepository();
+
+		private final List<ReservationEvent> writtenEvents = new ArrayList<ReservationEvent>();
+
+		private volatile int failures;
+
+		private volatile int saves;
+
+		@Override
+		public synchronized void save(Reservation reservation) {
+			if (failures > 0) {
+				failures--;
+				throw new IllegalStateException("write failed");
+			}
+			List<ReservationEvent> events = new ArrayList<ReservationEvent>(reservation.getUncommittedEvents());
+			repository.save(reservation);
+			writtenEvents.addAll(events);
+			saves++;
+		}
+
+		@Override
+		public Reservation load(Id reservationId) {
+			return repository.load(reservationId);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Currency;
+import java.util.Date;
+
+import org.junit.Test;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+public class BinaryFormatTest {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+	@Test
+	public void moneyRoundTrip() {
+		String[] amounts = { "0", "0.01", "-0.01", "12.34", "92233720368547758.07", "-92233720368547758.07",
+				"92233720368547758.08", "-92233720368547758.08", "-92233720368547758.09", "1e30", "-123456789012345678901234567.89" };
+		for (String amount : amounts) {
+			Money money = new Money(new BigDecimal(amount), Currency.getInstance("PLN"));
+			Money read = roundTripMoney(money);
+
+			assertThat(read, is(money));
+			assertThat(read.denomination(), is(money.denomination()));
+			assertThat(read.getCurrencyCode(), is("PLN"));
+			assertThat(read.hashCode(), is(money.hashCode()));
+		}
+	}
+
+	@Test
+	public void amountsPastLongRangeAreInflated() {
+		Money money = new Money(new BigDecimal("92233720368547758.08"));
+		assertThat(money.isCompact(), is(false));
+		assertThat(roundTripMoney(money).isCompact(), is(false));
+		assertThat(roundTripMoney(new Money(new BigDecimal("92233720368547758.07"))).isCompact(), is(true));
+	}
+
+	@Test
+	public void hydratedAmountsOfOtherScaleRoundTrip() throws Exception {
+		String[] amounts = { "3.5", "3", "-0.5", "12.345", "1e30", "92233720368547758.1" };
+		for (String amount : amounts) {
+			Money hydrated = hydrated(new BigDecimal(amount), "PLN");
+			Money read = roundTripMoney(hydrated);
+
+			assertThat(read, is(new Money(new BigDecimal(amount), Currency.getInstance("PLN"))));
+			assertThat(read.denomination(), is(new BigDecimal(amount).setScale(2, RoundingMode.HALF_EVEN)));
+			assertThat(read.getCurrencyCode(), is("PLN"));
+		}
+	}
+
+	@Test
+	public void nullValuesRoundTrip() {
+		BinaryFormat.putMoney(buffer, null);
+		BinaryFormat.putId(buffer, null);
+		BinaryFormat.putString(buffer, null);
+		BinaryFormat.putDate(buffer, null);
+		BinaryFormat.putClientData(buffer, null);
+		buffer.flip();
+
+		assertThat(BinaryFormat.getMoney(buffer), is(nullValue()));
+		assertThat(BinaryFormat.getId(buffer), is(nullValue()));
+		assertThat(BinaryFormat.getString(buffer), is(nullValue()));
+		assertThat(BinaryFormat.getDate(buffer), is(nullValue()));
+		assertThat(BinaryFormat.getClientData(buffer), is(nullValue()));
+		assertThat(buffer.hasRemaining(), is(false));
+	}
+
+	@Test
+	public void uuidIdRoundTripsAsBits() {
+		Id id = Id.generate();
+		Id read = roundTripId(id);
+
+		assertThat(read, is(id));
+		assertThat(read.hasBits(), is(true));
+		assertThat(read.getId(), is(id.getId()));
+	}
+
+	@Test
+	public void textIdRoundTripsAsText() {
+		String[] texts = { "1", "client-42", "", "zażółć", "3F2504E0-4F89-11D3-9A0C-0305E82C3301" };
+		for (String text : texts) {
+			Id id = new Id(text);
+			Id read = roundTripId(id);
+
+			assertThat(read, is(id));
+			assertThat(read.hasBits(), is(false));
+			assertThat(read.getId(), is(text));
+		}
+	}
+
+	@Test
+	public void stringDateAndClientDataRoundTrip() {
+		Date date = new Date(1413500000000L);
+		ClientData client = new ClientData(new Id("7"), "Żaneta");
+		BinaryFormat.putString(buffer, "zażółć gęślą jaźń");
+		BinaryFormat.putDate(buffer, date);
+		BinaryFormat.putClientData(buffer, client);
+		buffer.flip();
+
+		assertThat(BinaryFormat.getString(buffer), is("zażółć gęślą jaźń"));
+		assertThat(BinaryFormat.getDate(buffer), is(date));
+		ClientData read = BinaryFormat.getClientData(buffer);
+		assertThat(read.getAggregateId(), is(client.getAggregateId()));
+		assertThat(read.getName(), is(client.getName()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOtherFormatVersion() {
+		buffer.put((byte) (BinaryFormat.FORMAT_VERSION + 1));
+		buffer.flip();
+		BinaryFormat.checkVersion(buffer);
+	}
+
+	private Money roundTripMoney(Money money) {
+		buffer.clear();
+		BinaryFormat.putMoney(buffer, money);
+		buffer.flip();
+		Money read = BinaryFormat.getMoney(buffer);
+		assertThat(buffer.hasRemaining(), is(false));
+		return read;
+	}
+
+	/**
+	 * Money as filled in by a persistence provider, keeping the scale of the
+	 * column it was read from.
+	 */
+	private static Money hydrated(BigDecimal amount, String currencyCode) throws Exception {
+		Money money = new Money();
+		set(money, "denomination", amount);
+		set(money, "currencyCode", currencyCode);
+		return money;
+	}
+
+	private static void set(Money money, String name, Object value) throws Exception {
+		Field field = Money.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(money, value);
+	}
+
+	private Id roundTripId(Id id) {
+		buffer.clear();
+		BinaryFormat.putId(buffer, id);
+		buffer.flip();
+		Id read = BinaryFormat.getId(buffer);
+		assertThat(buffer.hasRemaining(), is(false));
+		return read;
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2011-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares Money arithmetic and equality with plain BigDecimal math, which is
+ * what Money did before amounts were kept as long minor units.
+ */
+public class MoneyTest {
+
+	private static final String EUR = "EUR";
+
+	private static final long[] BOUNDARY_UNITS = { 0, 1, -1, 99, -99, Integer.MAX_VALUE, Integer.MIN_VALUE,
+			Long.MAX_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2, Long.MAX_VALUE / 2,
+			Long.MIN_VALUE / 2, Long.MAX_VALUE / 3 };
+
+	private final Random random = new Random(20141017L);
+
+	@Test
+	public void addMatchesBigDecimalAddition() {
+		for (int i = 0; i < 20000; i++) {
+			BigDecimal a = randomAmount();
+			BigDecimal b = randomAmount();
+			assertSameAs(money(a).add(money(b)), a.add(b));
+		}
+	}
+
+	@Test
+	public void subtractMatchesBigDecimalSubtraction() {
+		for (int i = 0; i < 20000; i++) {
+			BigDecimal a = randomAmount();
+			BigDecimal b = randomAmount();
+			assertSameAs(money(a).subtract(money(b)), a.subtract(b));
+		}
+	}
+
+	@Test
+	public void multiplyByMatchesBigDecimalMultiplication() {
+		double[] multipliers = { 0, 1, -1, 2, 3, 7, 100, -100, Integer.MAX_VALUE, Integer.MIN_VALUE, 0.5, 0.23, 1.5,
+				-2.75, 1e12 };
+		for (int i = 0; i < 5000; i++) {
+			BigDecimal a = randomAmount();
+			for (double multiplier : multipliers)
+				assertSameAs(money(a).multiplyBy(multiplier), a.multiply(new BigDecimal(multiplier)));
+		}
+	}
+
+	@Test
+	public void arithmeticAtLongBoundaryOverflowsIntoBigDecimal() {
+		for (long x : BOUNDARY_UNITS) {
+			for (long y : BOUNDARY_UNITS) {
+				BigDecimal a = BigDecimal.valueOf(x, 2);
+				BigDecimal b = BigDecimal.valueOf(y, 2);
+				assertSameAs(money(a).add(money(b)), a.add(b));
+				assertSameAs(money(a).subtract(money(b)), a.subtract(b));
+				assertSameAs(money(a).multiplyBy((double) (int) y), a.multiply(new BigDecimal((double) (int) y)));
+				assertThat(money(a).greaterThan(money(b)), is(a.compareTo(b) > 0));
+				assertThat(money(a).lessThan(money(b)), is(a.compareTo(b) < 0));
+				assertThat(money(a).lessOrEquals(money(b)), is(a.compareTo(b) <= 0));
+			}
+		}
+	}
+
+	@Test
+	public void equalsAndHashCodeMatchBigDecimal() {
+		for (int i = 0; i < 20000; i++) {
+			BigDecimal a = randomAmount();
+			BigDecimal b = random.nextBoolean() ? a : randomAmount();
+			Money x = money(a);
+			Money y = money(b);
+			boolean expected = scaled(a).equals(scaled(b));
+			assertThat(x.equals(y), is(expected));
+			assertThat(y.equals(x), is(expected));
+			assertThat(x.hashCode(), is(referenceHashCode(a, EUR)));
+		}
+	}
+
+	@Test
+	public void hydratedMoneyEqualsComputedMoney() throws Exception {
+		for (long x : BOUNDARY_UNITS) {
+			BigDecimal amount = BigDecimal.valueOf(x, 2);
+			Money hydrated = hydrated(amount, EUR);
+			Money computed = money(amount).add(money(BigDecimal.ZERO));
+
+			assertThat(hydrated.equals(computed), is(true));
+			assertThat(computed.equals(hydrated), is(true));
+			assertThat(hydrated.equals(money(amount)), is(true));
+			assertThat(money(amount).equals(hydrated), is(true));
+			assertThat(hydrated.hashCode(), is(computed.hashCode()));
+		}
+		Money sum = new Money(1).add(new Money(2));
+		Money three = hydrated(new BigDecimal("3.00"), EUR);
+		assertThat(sum.equals(three), is(true));
+		assertThat(three.equals(sum), is(true));
+		assertThat(three.add(new Money(1)).equals(new Money(4)), is(true));
+	}
+
+	@Test
+	public void accumulatorBulkOperationsMatchMoneyArithmetic() {
+		int[] factors = { 0, 1, -1, 3, 100, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		for (int i = 0; i < 2000; i++) {
+			Money[] prices = new Money[random.nextInt(6)];
+			int[] quantities = new int[prices.length];
+			Money expected = Money.ZERO;
+			Money expectedLines = Money.ZERO;
+			for (int j = 0; j < prices.length; j++) {
+				prices[j] = money(randomAmount());
+				quantities[j] = factors[random.nextInt(factors.length)];
+				expected = expected.add(prices[j]);
+				expectedLines = expectedLines.add(prices[j].multiplyBy((double) quantities[j]));
+			}
+			assertThat(MoneyAccumulator.sum(prices).denomination(), is(expected.denomination()));
+
+			MoneyAccumulator lines = new MoneyAccumulator();
+			lines.addAll(prices, quantities);
+			assertThat(lines.total().denomination(), is(expectedLines.denomination()));
+
+			int factor = factors[random.nextInt(factors.length)];
+			MoneyAccumulator scaled = new MoneyAccumulator();
+			scaled.addAll(prices);
+			scaled.multiplyBy(factor);
+			assertThat(scaled.total().denomination(), is(expected.multiplyBy((double) factor).denomination()));
+
+			Money other = money(randomAmount());
+			assertThat(Integer.signum(scaled.compareTo(other)),
+					is(scaled.total().denomination().compareTo(other.denomination())));
+		}
+	}
+
+	private BigDecimal randomAmount() {
+		switch (random.nextInt(4)) {
+		case 0:
+			return BigDecimal.valueOf(random.nextInt(200001) - 100000, 2);
+		case 1:
+			return BigDecimal.valueOf(random.nextLong(), 2);
+		case 2:
+			return BigDecimal.valueOf(BOUNDARY_UNITS[random.nextInt(BOUNDARY_UNITS.length)], 2);
+		default:
+			return scaled(new BigDecimal(random.nextDouble() * 1e6 - 5e5));
+		}
+	}
+
+	private static Money money(BigDecimal amount) {
+		return new Money(amount);
+	}
+
+	private static BigDecimal scaled(BigDecimal amount) {
+		return amount.setScale(2, RoundingMode.HALF_EVEN);
+	}
+
+	private static void assertSameAs(Money actual, BigDecimal expectedUnscaled) {
+		BigDecimal expected = scaled(expectedUnscaled);
+		assertThat(actual.denomination(), is(expected));
+		assertThat(actual.hashCode(), is(referenceHashCode(expected, EUR)));
+		assertThat(actual.equals(money(expected)), is(true));
+		assertThat(money(expected).equals(actual), is(true));
+	}
+
+	/**
+	 * hashCode of the BigDecimal only implementation.
+	 */
+	private static int referenceHashCode(BigDecimal amount, String currencyCode) {
+		return 31 * (31 + currencyCode.hashCode()) + scaled(amount).hashCode();
+	}
+
+	/**
+	 * Money as filled in by a persistence provider through the protected
+	 * constructor.
+	 */
+	private static Money hydrated(BigDecimal amount, String currencyCode) throws Exception {
+		Money money = new Money();
+		set(money, "denomination", scaled(amount));
+		set(money, "currencyCode", currencyCode);
+		return money;
+	}
+
+	private static void set(Money money, String name, Object value) throws Exception {
+		Field field = Money.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(money, value);
+	}
+}